@@ -0,0 +1,147 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven.bench;
+
+import haven.*;
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.awt.image.BufferedImage;
+import javax.imageio.ImageIO;
+import static haven.MCache.cmaps;
+
+/*
+ * Synthetic inputs shared by the benchmarks, so that none of them
+ * need a game cache, a server or a display.
+ */
+public class BenchData {
+    /* A ResCache held entirely in memory. */
+    public static class MemCache implements ResCache {
+	public final Map<String, byte[]> data = new HashMap<>();
+
+	public OutputStream store(String name) {
+	    return(new ByteArrayOutputStream() {
+		    public void close() {
+			synchronized(data) {
+			    data.put(name, toByteArray());
+			}
+		    }
+		});
+	}
+
+	public InputStream fetch(String name) throws IOException {
+	    byte[] buf;
+	    synchronized(data) {
+		buf = data.get(name);
+	    }
+	    if(buf == null)
+		throw(new FileNotFoundException(name));
+	    return(new ByteArrayInputStream(buf));
+	}
+    }
+
+    private static byte[] tileres(Random rnd, Coord sz) throws IOException {
+	BufferedImage img = new BufferedImage(sz.x, sz.y, BufferedImage.TYPE_INT_ARGB);
+	for(int y = 0; y < sz.y; y++) {
+	    for(int x = 0; x < sz.x; x++)
+		img.setRGB(x, y, rnd.nextInt() | 0xff000000);
+	}
+	ByteArrayOutputStream png = new ByteArrayOutputStream();
+	ImageIO.write(img, "PNG", png);
+	MessageBuf lay = new MessageBuf();
+	lay.addint16((short)0).addint16((short)0).adduint8(0);
+	lay.addint16((short)-1).addint16((short)0).addint16((short)0);
+	lay.addbytes(png.toByteArray());
+	MessageBuf res = new MessageBuf();
+	res.addbytes("Haven Resource 1".getBytes(Utils.ascii)).adduint16(1);
+	res.addstring("image").addint32(lay.size()).addbytes(lay.fin());
+	return(res.fin());
+    }
+
+    /* Writes n tileset resources with random texture images into a
+     * temporary directory and returns them as loaded TileInfos. */
+    public static MapFile.TileInfo[] tilesets(int n, Coord sz) throws IOException, InterruptedException {
+	Path dir = Files.createTempDirectory("hbench");
+	Random rnd = new Random(n);
+	Resource.Pool pool = new Resource.Pool(new Resource.FileSource(dir));
+	MapFile.TileInfo[] ret = new MapFile.TileInfo[n];
+	for(int i = 0; i < n; i++) {
+	    Path p = dir.resolve(String.format("bench/tiles/t%d.res", i));
+	    Files.createDirectories(p.getParent());
+	    Files.write(p, tileres(rnd, sz));
+	    ret[i] = new MapFile.TileInfo(new Resource.Saved(pool, String.format("bench/tiles/t%d", i), 1), i);
+	}
+	for(MapFile.TileInfo ti : ret) {
+	    while(true) {
+		try {
+		    ti.res.get();
+		    break;
+		} catch(Loading l) {
+		    l.waitfor();
+		}
+	    }
+	}
+	return(ret);
+    }
+
+    /* A grid of contiguous patches of tiles, roughly like real
+     * terrain, so that tileset borders occur at a realistic rate. */
+    public static MapFile.Grid grid(long id, MapFile.TileInfo[] tilesets) {
+	Random rnd = new Random(id);
+	int[] tiles = new int[cmaps.x * cmaps.y];
+	float[] zmap = new float[cmaps.x * cmaps.y];
+	for(int y = 0, i = 0; y < cmaps.y; y++) {
+	    for(int x = 0; x < cmaps.x; x++, i++) {
+		tiles[i] = ((x / 17) + (y / 13) * 3 + ((rnd.nextInt(8) == 0) ? 1 : 0)) % tilesets.length;
+		zmap[i] = (float)(Math.sin(x * 0.1) * Math.cos(y * 0.07) * 20);
+	    }
+	}
+	return(new MapFile.Grid(id, tilesets, tiles, zmap, System.currentTimeMillis()));
+    }
+
+    /* A drawable that only names a resource, which is all that
+     * GobTag classification looks at. */
+    public static class NamedDrawable extends Drawable {
+	public final String name;
+
+	public NamedDrawable(Gob gob, String name) {
+	    super(gob);
+	    this.name = name;
+	}
+
+	public Resource getres() {return(null);}
+	public Indir<Resource> getires() {return(null);}
+	public String resId() {return(name);}
+    }
+
+    public static final String[] gobnames = {
+	"gfx/borka/body", "gfx/terobjs/trees/oak", "gfx/terobjs/bushes/arrowwood",
+	"gfx/terobjs/dframe", "gfx/terobjs/ttub", "gfx/terobjs/smelter",
+	"gfx/kritter/boar/boar", "gfx/terobjs/herbs/chantrelle", "gfx/terobjs/chest",
+	"gfx/terobjs/beehive", "gfx/tiles/rocks/basalt", "gfx/terobjs/items/arrow",
+    };
+}
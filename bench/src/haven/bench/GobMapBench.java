@@ -0,0 +1,97 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+
+package haven.bench;
+
+import haven.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Compares LongMultiMap with the HashMultiMap it replaced as the
+ * object table of OCache, at a typical large town's worth of
+ * objects: random lookups, a quarter of them misses, as from object
+ * deltas and clicks, and full iterations, as from the tick paths and
+ * object searches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GobMapBench {
+    @Param({"10000"})
+    public int count;
+
+    private HashMultiMap<Long, Object> old;
+    private LongMultiMap<Object> nw;
+    private long[] probe;
+
+    @Setup
+    public void setup() {
+	Random rnd = new Random(4711);
+	long[] ids = new long[count];
+	for(int i = 0; i < count; i++)
+	    ids[i] = 1000000000L + rnd.nextInt(Integer.MAX_VALUE);
+	probe = new long[count];
+	for(int i = 0; i < probe.length; i++)
+	    probe[i] = ((i % 4) == 0) ? (ids[rnd.nextInt(count)] + 1) : ids[rnd.nextInt(count)];
+	old = new HashMultiMap<>();
+	nw = new LongMultiMap<>();
+	for(int i = 0; i < count; i++) {
+	    Object v = new Object();
+	    old.put(ids[i], v);
+	    nw.put(ids[i], v);
+	}
+    }
+
+    @Benchmark
+    public void hashget(Blackhole bh) {
+	for(long id : probe)
+	    bh.consume(old.get(id));
+    }
+
+    @Benchmark
+    public void longget(Blackhole bh) {
+	for(long id : probe)
+	    bh.consume(nw.get(id));
+    }
+
+    @Benchmark
+    public void hashiter(Blackhole bh) {
+	for(Object o : old.values())
+	    bh.consume(o);
+    }
+
+    @Benchmark
+    public void longiter(Blackhole bh) {
+	nw.forEach(bh::consume);
+    }
+}
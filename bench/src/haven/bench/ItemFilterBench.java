@@ -0,0 +1,71 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven.bench;
+
+import haven.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemFilterBench {
+    public static final String[] names = {
+	"Pickaxe", "Stone Axe", "Bone Saw", "Wooden Cup", "Cured Hide",
+	"Block of Spruce", "Flint", "Carrot", "Wild Onion", "Bar of Copper",
+    };
+
+    @Param({"axe", "txt:bar of", "q>10 spruce"})
+    public String query;
+
+    private ItemFilter filter;
+    private List<List<ItemInfo>> items;
+
+    @Setup
+    public void setup() {
+	filter = ItemFilter.create(query);
+	items = new ArrayList<>();
+	for(String nm : names)
+	    items.add(Collections.singletonList(new ItemInfo.Name(null, nm)));
+    }
+
+    @Benchmark
+    public ItemFilter create() {
+	return(ItemFilter.create(query));
+    }
+
+    @Benchmark
+    public void match(Blackhole bh) {
+	for(List<ItemInfo> info : items)
+	    bh.consume(filter.matches(info));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven.bench;
+
+import haven.*;
+import java.util.concurrent.TimeUnit;
+import java.awt.image.BufferedImage;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapFileBench {
+    @Param({"8"})
+    public int ntiles;
+
+    private MapFile file;
+    private MapFile.Grid grid;
+
+    @Setup
+    public void setup() throws Exception {
+	file = new MapFile(new BenchData.MemCache(), "");
+	grid = BenchData.grid(1, BenchData.tilesets(ntiles, Coord.of(64, 64)));
+	grid.save(file);
+    }
+
+    @Benchmark
+    public void save() {
+	grid.save(file);
+    }
+
+    @Benchmark
+    public MapFile.Grid load() {
+	return(MapFile.Grid.load(file, grid.id));
+    }
+
+    @Benchmark
+    public BufferedImage render() {
+	return(grid.render(Coord.z));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+
+package haven.bench;
+
+import haven.*;
+import java.util.concurrent.TimeUnit;
+import java.awt.image.*;
+import org.openjdk.jmh.annotations.*;
+import static haven.MCache.cmaps;
+
+/*
+ * Compares MapFile.DataGrid.render with the per-pixel raster
+ * implementation it replaced, which is kept here as a reference and
+ * checked to produce identical output during setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapRenderBench {
+    @Param({"8"})
+    public int ntiles;
+
+    private MapFile.Grid grid;
+    private final Coord off = Coord.of(17, 5);
+
+    private static BufferedImage tex(MapFile.DataGrid g, int t) {
+	Resource.Image ir = g.tilesets[t].res.get().layer(Resource.imgc);
+	return((ir == null) ? null : ir.img);
+    }
+
+    static BufferedImage render0(MapFile.DataGrid g, Coord off) {
+	WritableRaster buf = PUtils.imgraster(cmaps);
+	Coord c = new Coord();
+	for(c.y = 0; c.y < cmaps.y; c.y++) {
+	    for(c.x = 0; c.x < cmaps.x; c.x++) {
+		BufferedImage tex = tex(g, g.gettile(c));
+		int rgb = 0;
+		if(tex != null)
+		    rgb = tex.getRGB(Utils.floormod(c.x + off.x, tex.getWidth()),
+				     Utils.floormod(c.y + off.y, tex.getHeight()));
+		buf.setSample(c.x, c.y, 0, (rgb & 0x00ff0000) >>> 16);
+		buf.setSample(c.x, c.y, 1, (rgb & 0x0000ff00) >>>  8);
+		buf.setSample(c.x, c.y, 2, (rgb & 0x000000ff) >>>  0);
+		buf.setSample(c.x, c.y, 3, (rgb & 0xff000000) >>> 24);
+	    }
+	}
+	for(c.y = 1; c.y < cmaps.y - 1; c.y++) {
+	    for(c.x = 1; c.x < cmaps.x - 1; c.x++) {
+		int p = g.tilesets[g.gettile(c)].prio;
+		if((g.tilesets[g.gettile(c.add(-1, 0))].prio > p) ||
+		   (g.tilesets[g.gettile(c.add( 1, 0))].prio > p) ||
+		   (g.tilesets[g.gettile(c.add(0, -1))].prio > p) ||
+		   (g.tilesets[g.gettile(c.add(0,  1))].prio > p))
+		{
+		    buf.setSample(c.x, c.y, 0, 0);
+		    buf.setSample(c.x, c.y, 1, 0);
+		    buf.setSample(c.x, c.y, 2, 0);
+		    buf.setSample(c.x, c.y, 3, 255);
+		}
+	    }
+	}
+	return(PUtils.rasterimg(buf));
+    }
+
+    private static byte[] data(BufferedImage img) {
+	return(((DataBufferByte)img.getRaster().getDataBuffer()).getData());
+    }
+
+    @Setup
+    public void setup() throws Exception {
+	grid = BenchData.grid(1, BenchData.tilesets(ntiles, Coord.of(64, 64)));
+	if(!java.util.Arrays.equals(data(grid.render(off)), data(render0(grid, off))))
+	    throw(new IllegalStateException("render output differs from the raster reference"));
+    }
+
+    @Benchmark
+    public BufferedImage render() {
+	return(grid.render(off));
+    }
+
+    @Benchmark
+    public BufferedImage raster() {
+	return(render0(grid, off));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven.bench;
+
+import haven.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBench {
+    public static final int COUNT = 1024;
+    private byte[] prims, deflated;
+
+    @Setup
+    public void setup() {
+	Random rnd = new Random(1);
+	MessageBuf buf = new MessageBuf();
+	for(int i = 0; i < COUNT; i++) {
+	    buf.adduint8(rnd.nextInt(256));
+	    buf.addint16((short)rnd.nextInt());
+	    buf.addint32(rnd.nextInt());
+	    buf.addint64(rnd.nextLong());
+	    buf.addfloat32(rnd.nextFloat());
+	    buf.addcoord(Coord.of(rnd.nextInt(), rnd.nextInt()));
+	    buf.addstring("gfx/terobjs/" + rnd.nextInt(100));
+	}
+	prims = buf.fin();
+
+	/* Something compressible, like the map data the server sends. */
+	byte[] raw = new byte[65536];
+	for(int i = 0; i < raw.length; i++)
+	    raw[i] = (byte)((i / 64) ^ (rnd.nextInt(16)));
+	Deflater def = new Deflater();
+	def.setInput(raw);
+	def.finish();
+	byte[] out = new byte[raw.length * 2];
+	int len = def.deflate(out);
+	def.end();
+	deflated = Arrays.copyOf(out, len);
+    }
+
+    @Benchmark
+    public void primitives(Blackhole bh) {
+	Message msg = new MessageBuf(prims);
+	for(int i = 0; i < COUNT; i++) {
+	    bh.consume(msg.uint8());
+	    bh.consume(msg.int16());
+	    bh.consume(msg.int32());
+	    bh.consume(msg.int64());
+	    bh.consume(msg.float32());
+	    bh.consume(msg.coord());
+	    bh.consume(msg.string());
+	}
+    }
+
+    @Benchmark
+    public byte[] inflate() {
+	return(new ZMessage(new MessageBuf(deflated)).bytes());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+
+package haven.bench;
+
+import haven.*;
+import java.util.*;
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Mixes a number of looping clips at various volumes, as from a
+ * busy area's ambient and positional sounds, pulling blocks of the
+ * player's size through Audio.LDump the way the player thread
+ * would. A voices of 0 mixes every clip. Run with -prof gc for the
+ * allocation per block.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MixerBench {
+    public static final int RATE = 44100;
+
+    @Param({"128"})
+    public int clips;
+
+    @Param({"0", "32"})
+    public int voices;
+
+    private Audio.CS out;
+    private double[][] buf;
+    private int bs;
+
+    private static byte[] tone(Random rnd) {
+	int ns = RATE / 4 + rnd.nextInt(RATE);
+	double f = 100 + rnd.nextInt(900);
+	byte[] ret = new byte[ns * 2];
+	for(int i = 0; i < ns; i++) {
+	    int v = (int)(Math.sin(2 * Math.PI * f * i / RATE) * 8000);
+	    ret[i * 2] = (byte)v;
+	    ret[(i * 2) + 1] = (byte)(v >> 8);
+	}
+	return(ret);
+    }
+
+    private static Audio.CS clip(byte[] data, double vol) {
+	return(new Audio.VolAdjust(new Audio.Repeater() {
+		protected Audio.CS cons() {
+		    return(new Audio.PCMClip(new ByteArrayInputStream(data), 1, Audio.PCMClip.SN16));
+		}
+	    }, vol));
+    }
+
+    @Setup
+    public void setup() {
+	Random rnd = new Random(4711);
+	Audio.Mixer mixer = new Audio.Mixer(true).voices(voices);
+	for(int i = 0; i < clips; i++)
+	    mixer.add(clip(tone(rnd), rnd.nextDouble()));
+	out = new Audio.LDump(mixer, Integer.MAX_VALUE);
+	bs = Audio.bufsize() / 2;
+	buf = new double[2][bs];
+	/* Let the mixer pick up its clips. */
+	out.get(buf, bs);
+    }
+
+    @Benchmark
+    public void mix(Blackhole bh) {
+	bh.consume(out.get(buf, bs));
+	bh.consume(buf);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven.bench;
+
+import haven.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OCacheBench {
+    @Param({"1000"})
+    public int count;
+
+    private Glob glob;
+    private Gob[] gobs;
+
+    @Setup
+    public void setup() {
+	glob = new Glob(null);
+	Random rnd = new Random(count);
+	gobs = new Gob[count];
+	for(int i = 0; i < count; i++)
+	    gobs[i] = new Gob(glob, Coord2d.of(rnd.nextDouble() * 1100, rnd.nextDouble() * 1100), i + 1);
+	for(Gob gob : gobs)
+	    glob.oc.add(gob);
+    }
+
+    @Benchmark
+    public void addremove() {
+	for(Gob gob : gobs)
+	    glob.oc.remove(gob);
+	for(Gob gob : gobs)
+	    glob.oc.add(gob);
+    }
+
+    @Benchmark
+    public void iterate(Blackhole bh) {
+	synchronized(glob.oc) {
+	    for(Gob gob : glob.oc)
+		bh.consume(gob.rc);
+	}
+    }
+}
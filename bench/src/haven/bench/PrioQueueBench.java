@@ -0,0 +1,88 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven.bench;
+
+import haven.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrioQueueBench {
+    public static class Item implements Prioritized {
+	public int prio;
+
+	public Item(int prio) {this.prio = prio;}
+
+	public int priority() {return(prio);}
+    }
+
+    @Param({"1024"})
+    public int count;
+
+    private Item[] items;
+    private Random rnd;
+
+    @Setup
+    public void setup() {
+	rnd = new Random(count);
+	items = new Item[count];
+	for(int i = 0; i < count; i++)
+	    items[i] = new Item(rnd.nextInt(16));
+    }
+
+    @Benchmark
+    public void offerpoll(Blackhole bh) {
+	PrioQueue<Item> q = new PrioQueue<>();
+	for(Item it : items)
+	    q.offer(it);
+	while(!q.isEmpty())
+	    bh.consume(q.poll());
+    }
+
+    /* Resource loading bumps the priority of queued entries when
+     * something starts waiting on them. */
+    @Benchmark
+    public void update(Blackhole bh) {
+	PrioQueue<Item> q = new PrioQueue<>();
+	for(Item it : items)
+	    q.offer(it);
+	for(int i = 0; i < count; i++) {
+	    Item it = items[rnd.nextInt(count)];
+	    it.prio = rnd.nextInt(16);
+	    q.update(it);
+	}
+	while(!q.isEmpty())
+	    bh.consume(q.poll());
+    }
+}
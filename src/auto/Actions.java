@@ -29,7 +29,8 @@ public class Actions {
     }
 
     static void pickup(GameUI gui, Predicate<Gob> filter, boolean pickAll) {
-	List<ITarget> targets = gui.ui.sess.glob.oc.stream()
+	Stream<Gob> gobs = pickAll ? gui.ui.sess.glob.oc.stream() : aroundPlayer(gui, CFG.AUTO_PICK_RADIUS.get());
+	List<ITarget> targets = gobs
 	    .filter(filter)
 	    .filter(gob -> pickAll || PositionHelper.distanceToPlayer(gob) <= CFG.AUTO_PICK_RADIUS.get())
 	    .filter(g -> pickAll || BotUtil.isOnRadar(g))
@@ -48,7 +49,7 @@ public class Actions {
     }
     
     public static void openGate(GameUI gui) {
-	List<ITarget> targets = gui.ui.sess.glob.oc.stream()
+	List<ITarget> targets = aroundPlayer(gui, 35)
 	    .filter(gobIs(GobTag.GATE))
 	    .filter(gob -> !gob.isVisitorGate())
 	    .filter(gob -> PositionHelper.distanceToPlayer(gob) <= 35)
@@ -144,8 +145,7 @@ public class Actions {
     }
     
     public static void selectFlower(GameUI gui, long gobid, String option) {
-	List<ITarget> targets = gui.ui.sess.glob.oc.stream()
-	    .filter(gob -> gob.id == gobid)
+	List<ITarget> targets = gui.ui.sess.glob.oc.getgobs(gobid).stream()
 	    .map(GobTarget::new)
 	    .collect(Collectors.toList());
 	
@@ -193,7 +193,7 @@ public class Actions {
     }
 
     public static void mountClosestHorse(GameUI gui) {
-	List<ITarget> targets = getGobs(gui, 1, PositionHelper.byDistanceToPlayer,
+	List<ITarget> targets = getClosest(gui, Double.POSITIVE_INFINITY,
 	    gob -> gob.anyOf(GobTag.MARE, GobTag.STALLION)
 		&& !gob.anyOf(GobTag.DEAD, GobTag.KO)
 		&& gob.occupants.isEmpty());
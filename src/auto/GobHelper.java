@@ -2,6 +2,7 @@ package auto;
 
 import haven.*;
 
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.function.Function;
@@ -11,11 +12,11 @@ import java.util.stream.Stream;
 
 public class GobHelper {
     static List<ITarget> getNearest(GameUI gui, String name, int limit, double distance) {
-	return getGobs(gui, limit, PositionHelper.byDistanceToPlayer, gobIs(name), gob -> PositionHelper.distanceToPlayer(gob) <= distance);
+	return getGobs(aroundPlayer(gui, distance), limit, PositionHelper.byDistanceToPlayer, gobIs(name), gob -> PositionHelper.distanceToPlayer(gob) <= distance);
     }
     
     static List<ITarget> getNearest(GameUI gui, int limit, double distance, GobTag... tags) {
-	return getGobs(gui, limit, PositionHelper.byDistanceToPlayer, gobIsAny(tags), gob -> PositionHelper.distanceToPlayer(gob) <= distance);
+	return getGobs(aroundPlayer(gui, distance), limit, PositionHelper.byDistanceToPlayer, gobIsAny(tags), gob -> PositionHelper.distanceToPlayer(gob) <= distance);
     }
     
     @SafeVarargs
@@ -27,7 +28,7 @@ public class GobHelper {
 	    filters = Utils.extend(filters, filters.length + 1);
 	    filters[filters.length - 1] = distFilter;
 	}
-	return getGobs(gui, limit, PositionHelper.byDistanceToPlayer, filters);
+	return getGobs(aroundPlayer(gui, distance), limit, PositionHelper.byDistanceToPlayer, filters);
     }
     
     @SafeVarargs
@@ -39,16 +40,41 @@ public class GobHelper {
 	    filters = Utils.extend(filters, filters.length + 1);
 	    filters[filters.length - 1] = distFilter;
 	}
-	return getGobs(gui, limit, Comparator.comparingDouble(g -> PositionHelper.distanceToCoord(pos, g)), filters);
+	Stream<Gob> around = (pos == null) ? Stream.empty() : gui.ui.sess.glob.oc.within(pos, distance).stream();
+	return getGobs(around, limit, Comparator.comparingDouble(g -> PositionHelper.distanceToCoord(pos, g)), filters);
     }
     
     private static List<ITarget> getNearest(GameUI gui, int limit, Function<Gob, Double> meter, double distance, GobTag... tags) {
 	return getGobs(gui, limit, Comparator.comparingDouble(meter::apply), gobIsAny(tags), gob -> meter.apply(gob) <= distance);
     }
     
+    /* The single closest object to the player passing the filter,
+     * searched for outwards from the player through the spatial
+     * index. */
+    static List<ITarget> getClosest(GameUI gui, double distance, Predicate<Gob> filter) {
+	OCache oc = gui.ui.sess.glob.oc;
+	Gob player = oc.getgob(gui.plid);
+	if(player == null) {return getGobs(gui, 1, PositionHelper.byDistanceToPlayer, filter);}
+	Gob gob = oc.nearest(player.rc, distance, filter);
+	return (gob == null) ? Collections.emptyList() : Collections.singletonList(new GobTarget(gob));
+    }
+    
+    /* Candidates for the distance filters, taken from the spatial
+     * index when the player's position is known. */
+    static Stream<Gob> aroundPlayer(GameUI gui, double distance) {
+	OCache oc = gui.ui.sess.glob.oc;
+	Gob player = oc.getgob(gui.plid);
+	if(player == null) {return oc.stream();}
+	return oc.within(player.rc, distance).stream();
+    }
+    
     @SafeVarargs
     static List<ITarget> getGobs(GameUI gui, int limit, Comparator<Gob> sort, Predicate<Gob>... filters) {
-	Stream<Gob> stream = gui.ui.sess.glob.oc.stream();
+	return getGobs(gui.ui.sess.glob.oc.stream(), limit, sort, filters);
+    }
+    
+    @SafeVarargs
+    static List<ITarget> getGobs(Stream<Gob> stream, int limit, Comparator<Gob> sort, Predicate<Gob>... filters) {
 	for (Predicate<Gob> filter : filters) {
 	    stream = stream.filter(filter);
 	}
@@ -35,6 +35,7 @@ import haven.Audio.VolAdjust;
 
 public class ActAudio extends State {
     public static final Slot<ActAudio> audio = new State.Slot<>(Slot.Type.SYS, ActAudio.class);
+    public static final Config.Variable<Integer> maxvoices = Config.Variable.propi("haven.audio-voices", 32);
     public final Channel pos;
     public final Channel amb;
     private final Map<Global, Global> global = new HashMap<Global, Global>();
@@ -117,7 +118,7 @@ public class ActAudio extends State {
 	    if(ret == null) {
 		synchronized(this) {
 		    if((ret = this.mixer) == null) {
-			this.volc = new Audio.VolAdjust(ret = this.mixer = new Audio.Mixer(true));
+			this.volc = new Audio.VolAdjust(ret = this.mixer = new Audio.Mixer(true).voices(maxvoices.get()));
 			this.volc.vol = volume;
 			Audio.play(this.volc);
 		    }
@@ -27,6 +27,7 @@
 package haven;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
 import java.nio.file.*;
 import javax.sound.sampled.*;
@@ -58,9 +59,27 @@ public class Audio {
     }
     public static final Class<Clip> clip = Clip.class;
 
+    /* Streams that can tell how audible they currently are, so
+     * that mixers with a voice limit can leave out the least audible
+     * ones. */
+    public interface Audible {
+	public double level();
+    }
+
     public static class Mixer implements CS {
 	public final boolean cont;
-	private final Collection<CS> clips = new LinkedList<CS>();
+	/* The clip array is only touched by the thread mixing, which
+	 * picks up changes queued by other threads at the start of
+	 * every block, so that adding and stopping clips never waits
+	 * for mixing or vice versa. */
+	private CS[] clips = new CS[16];
+	private int nclips = 0;
+	private final Queue<CS> adds = new ConcurrentLinkedQueue<>(), stops = new ConcurrentLinkedQueue<>();
+	private final Set<CS> members = Collections.newSetFromMap(new ConcurrentHashMap<>());
+	private volatile boolean clearreq = false;
+	private volatile int voices = 0;
+	private double[][] buf = {};
+	private double[] prio = new double[16], psort = new double[16];
 
 	public Mixer(boolean continuous) {
 	    this.cont = continuous;
@@ -70,35 +89,119 @@ public class Audio {
 	    this(false);
 	}
 
+	/* Mixes at most n clips at a time, being the most audible
+	 * ones. Looping clips beyond that are paused until they are
+	 * among them again, while others keep playing unheard, so that
+	 * they neither fall behind what they accompany nor are kept
+	 * from ending. Zero means no limit. */
+	public Mixer voices(int n) {
+	    this.voices = n;
+	    return(this);
+	}
+
+	private void sync() {
+	    if(clearreq) {
+		clearreq = false;
+		Arrays.fill(clips, 0, nclips, null);
+		nclips = 0;
+	    }
+	    for(CS cs; (cs = adds.poll()) != null;) {
+		if(nclips == clips.length) {
+		    clips = Arrays.copyOf(clips, clips.length * 2);
+		    prio = new double[clips.length];
+		    psort = new double[clips.length];
+		}
+		clips[nclips++] = cs;
+	    }
+	    for(CS cs; (cs = stops.poll()) != null;) {
+		for(int i = 0; i < nclips; i++) {
+		    if(clips[i] == cs) {
+			System.arraycopy(clips, i + 1, clips, i, nclips - i - 1);
+			clips[--nclips] = null;
+			break;
+		    }
+		}
+	    }
+	}
+
+	private static boolean looping(CS cs) {
+	    while(cs instanceof VolAdjust)
+		cs = ((VolAdjust)cs).bk;
+	    return(cs instanceof Repeater);
+	}
+
+	private static double level(CS cs) {
+	    return((cs instanceof Audible) ? ((Audible)cs).level() : Double.POSITIVE_INFINITY);
+	}
+
 	public int get(double[][] dst, int ns) {
+	    sync();
 	    int nch = dst.length;
-	    double[][] buf = new double[nch][ns];
-	    int max = 0;
-	    synchronized(clips) {
-		clip: for(Iterator<CS> i = clips.iterator(); i.hasNext();) {
-		    CS cs = i.next();
-		    int left = ns;
-		    int boff = 0;
-		    while(left > 0) {
-			int ret = cs.get(buf, left);
-			if(ret < 0) {
-			    i.remove();
-			    continue clip;
-			}
-			if(boff + ret > max) {
-			    for(int ch = 0; ch < nch; ch++)
-				Arrays.fill(dst[ch], max, boff + ret, 0.0);
-			    max = boff + ret;
-			}
-			for(int ch = 0; ch < nch; ch++) {
-			    for(int sm = 0; sm < ret; sm++)
-				dst[ch][boff + sm] += buf[ch][sm];
-			}
+	    if((buf.length != nch) || ((nch > 0) && (buf[0].length < ns)))
+		buf = new double[nch][Math.max(ns, 512)];
+	    /* With more clips than voices, only mix the clips at least
+	     * as audible as the least audible one that fits, and only
+	     * as many of those tied with it as fit. */
+	    int lim = voices;
+	    boolean cull = (lim > 0) && (nclips > lim);
+	    double thr = 0;
+	    int ties = 0;
+	    if(cull) {
+		for(int i = 0; i < nclips; i++)
+		    psort[i] = prio[i] = level(clips[i]);
+		Arrays.sort(psort, 0, nclips);
+		thr = psort[nclips - lim];
+		for(int i = nclips - lim; (i < nclips) && (psort[i] == thr); i++)
+		    ties++;
+	    }
+	    int max = 0, nend = 0;
+	    clip: for(int i = 0; i < nclips; i++) {
+		CS cs = clips[i];
+		boolean mix = true;
+		if(cull) {
+		    if((prio[i] < thr) || ((prio[i] == thr) && (ties-- <= 0))) {
+			if(looping(cs))
+			    continue;
+			mix = false;
+		    }
+		}
+		int left = ns;
+		int boff = 0;
+		while(left > 0) {
+		    int ret = cs.get(buf, left);
+		    if(ret < 0) {
+			clips[i] = null;
+			members.remove(cs);
+			nend++;
+			continue clip;
+		    }
+		    if(!mix) {
 			left -= ret;
-			boff += ret;
+			continue;
+		    }
+		    if(boff + ret > max) {
+			for(int ch = 0; ch < nch; ch++)
+			    Arrays.fill(dst[ch], max, boff + ret, 0.0);
+			max = boff + ret;
 		    }
+		    for(int ch = 0; ch < nch; ch++) {
+			double[] d = dst[ch], s = buf[ch];
+			for(int sm = 0; sm < ret; sm++)
+			    d[boff + sm] += s[sm];
+		    }
+		    left -= ret;
+		    boff += ret;
 		}
 	    }
+	    if(nend > 0) {
+		int o = 0;
+		for(int i = 0; i < nclips; i++) {
+		    if(clips[i] != null)
+			clips[o++] = clips[i];
+		}
+		Arrays.fill(clips, o, nclips, null);
+		nclips = o;
+	    }
 	    if(cont) {
 		for(int ch = 0; ch < nch; ch++) {
 		    for(int sm = max; sm < ns; sm++)
@@ -111,54 +214,35 @@ public class Audio {
 	}
 
 	public void add(CS clip) {
-	    synchronized(clips) {
-		clips.add(clip);
-	    }
+	    members.add(clip);
+	    adds.add(clip);
 	}
 
 	public void stop(CS clip) {
-	    synchronized(clips) {
-		for(Iterator<CS> i = clips.iterator(); i.hasNext();) {
-		    if(i.next() == clip) {
-			i.remove();
-			break;
-		    }
-		}
-	    }
+	    if(members.remove(clip))
+		stops.add(clip);
 	}
 
 	public boolean playing(CS clip) {
-	    synchronized(clips) {
-		for(CS cs : clips) {
-		    if(cs == clip)
-			return(true);
-		}
-	    }
-	    return(false);
+	    return(members.contains(clip));
 	}
 
 	public int size() {
-	    synchronized(clips) {
-		return(clips.size());
-	    }
+	    return(members.size());
 	}
 
 	public boolean empty() {
-	    synchronized(clips) {
-		return(clips.isEmpty());
-	    }
+	    return(members.isEmpty());
 	}
 
 	public Collection<CS> current() {
-	    synchronized(clips) {
-		return(new ArrayList<CS>(clips));
-	    }
+	    return(new ArrayList<CS>(members));
 	}
 
 	public void clear() {
-	    synchronized(clips) {
-		clips.clear();
-	    }
+	    adds.clear();
+	    members.clear();
+	    clearreq = true;
 	}
     }
 
@@ -168,12 +252,14 @@ public class Audio {
 	public final int sch, sfmt, ssz;
 	public int size = -1;
 	private final byte[] dbuf = new byte[256];
+	private final double[] dec;
 	private int head = 0, tail = 0;
 	private boolean eof = false;
 
 	public PCMClip(InputStream clip, int nch, int sfmt) {
 	    this.clip = clip;
 	    this.sch = nch;
+	    this.dec = new double[nch];
 	    switch(this.sfmt = sfmt) {
 	    case UN8:  ssz = 1; break;
 	    case SN8:  ssz = 1; break;
@@ -216,7 +302,6 @@ public class Audio {
 
 	public int get(double[][] dst, int ns) {
 	    int nch = dst.length;
-	    double[] dec = new double[sch];
 	    for(int sm = 0; sm < ns; sm++) {
 		while(tail - head < ssz * sch) {
 		    if(head > 0) {
@@ -346,6 +431,10 @@ public class Audio {
 	    this(new VorbisStream(bs));
 	}
 
+	protected float[][] decode() throws IOException {
+	    return(clip.decode());
+	}
+
 	public int get(double[][] dst, int ns) {
 	    int nch = dst.length;
 	    if(data == null)
@@ -353,7 +442,7 @@ public class Audio {
 	    for(int sm = 0; sm < ns; sm++) {
 		while(dp >= data[0].length) {
 		    try {
-			if((data = clip.decode()) == null)
+			if((data = decode()) == null)
 			    return((sm > 0)?sm:-1);
 		    } catch(IOException e) {
 			return(-1);
@@ -368,7 +457,141 @@ public class Audio {
 	}
     }
 
-    public static class VolAdjust implements CS {
+    /* Fully decoded PCM data, which any number of streams can play
+     * back at once without decoding it again. */
+    public static class PCMData {
+	public final float[][] data;
+	public final int len;
+
+	public PCMData(float[][] data, int len) {
+	    this.data = data;
+	    this.len = len;
+	}
+
+	public long size() {
+	    return((long)data.length * len * 4);
+	}
+
+	public CS view() {
+	    return(new CS() {
+		    int dp = 0;
+
+		    public int get(double[][] dst, int ns) {
+			int nch = dst.length, n = Math.min(ns, len - dp);
+			if(n <= 0)
+			    return(-1);
+			for(int ch = 0; ch < nch; ch++) {
+			    float[] src = data[ch % data.length];
+			    double[] d = dst[ch];
+			    for(int sm = 0; sm < n; sm++)
+				d[sm] = src[dp + sm];
+			}
+			dp += n;
+			return(n);
+		    }
+		});
+	}
+    }
+
+    /*
+     * Keeps the decoded PCM of short clips, such as footsteps and
+     * tool sounds, so that they are only decoded on their first
+     * play. Clips are recorded as they are decoded for that first
+     * play, and kept if they end within the length limit, evicting
+     * the least recently played ones past the size limit. Clips that
+     * turn out to be too long are remembered as such and then simply
+     * streamed. Keys should be values rather than the clip's owner,
+     * which would otherwise be kept alive by the cache.
+     */
+    public static class PCMCache {
+	public static final Config.Variable<Double> maxlen = Config.Variable.propf("haven.audio-pcmcache-len", 2.0);
+	public static final Config.Variable<Integer> maxsize = Config.Variable.propi("haven.audio-pcmcache-size", 16 << 20);
+	public static final PCMCache global = new PCMCache(maxlen.get(), maxsize.get());
+	public final double len;
+	public final long max;
+	private final Map<Object, PCMData> cache = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<Object, Boolean> uncacheable = new WeakHashMap<>();
+	private long size = 0;
+	private int hits = 0, misses = 0;
+
+	public PCMCache(double len, long max) {
+	    this.len = len;
+	    this.max = max;
+	}
+
+	private class Recorder extends VorbisClip {
+	    private final Object key;
+	    private final int maxns;
+	    private List<float[][]> bufs = new ArrayList<>();
+	    private int ns = 0;
+
+	    private Recorder(Object key, VorbisStream clip) {
+		super(clip);
+		this.key = key;
+		this.maxns = (int)(len * clip.rate);
+	    }
+
+	    protected float[][] decode() throws IOException {
+		float[][] ret = super.decode();
+		if(bufs != null) {
+		    if(ret == null) {
+			float[][] data = new float[clip.chn][ns];
+			int off = 0;
+			for(float[][] buf : bufs) {
+			    for(int ch = 0; ch < clip.chn; ch++)
+				System.arraycopy(buf[ch], 0, data[ch], off, buf[ch].length);
+			    off += buf[0].length;
+			}
+			bufs = null;
+			put(key, new PCMData(data, ns));
+		    } else if((ns += ret[0].length) > maxns) {
+			bufs = null;
+			synchronized(PCMCache.this) {
+			    uncacheable.put(key, Boolean.TRUE);
+			}
+		    } else {
+			bufs.add(ret);
+		    }
+		}
+		return(ret);
+	    }
+	}
+
+	private synchronized void put(Object key, PCMData data) {
+	    long sz = data.size();
+	    if((sz > max) || cache.containsKey(key))
+		return;
+	    cache.put(key, data);
+	    size += sz;
+	    for(Iterator<PCMData> i = cache.values().iterator(); (size > max) && i.hasNext();) {
+		size -= i.next().size();
+		i.remove();
+	    }
+	}
+
+	public CS stream(Object key, InputStream coded) throws IOException {
+	    if((len <= 0) || (max <= 0))
+		return(new VorbisClip(coded));
+	    synchronized(this) {
+		PCMData data = cache.get(key);
+		if(data != null) {
+		    hits++;
+		    return(data.view());
+		}
+		misses++;
+		if(uncacheable.containsKey(key))
+		    return(new VorbisClip(coded));
+	    }
+	    return(new Recorder(key, new VorbisStream(coded)));
+	}
+
+	public synchronized String stats() {
+	    int n = hits + misses;
+	    return(String.format("%d%% hits of %,d, %d clips, %,d/%,d bytes", (n > 0) ? ((hits * 100) / n) : 0, n, cache.size(), size, max));
+	}
+    }
+
+    public static class VolAdjust implements CS, Audible {
 	public final CS bk;
 	public double vol = 1.0, bal = 0.0;
 	private double[] cvol = {};
@@ -401,6 +624,10 @@ public class Audio {
 	    }
 	    return(ret);
 	}
+
+	public double level() {
+	    return(vol * ((bk instanceof Audible) ? ((Audible)bk).level() : 1.0));
+	}
     }
 
     public static class Resampler implements CS {
@@ -549,6 +776,7 @@ public class Audio {
     private static class Player extends HackThread {
 	private final CS stream;
 	private final int nch;
+	private double[][] val = {};
 	private volatile boolean reopen = false;
 
 	Player(CS stream) {
@@ -560,7 +788,8 @@ public class Audio {
 
 	private int fillbuf(byte[] dst, int off, int len) {
 	    int ns = len / (2 * nch);
-	    double[][] val = new double[nch][ns];
+	    if((val.length != nch) || (val[0].length != ns))
+		val = new double[nch][ns];
 	    int left = ns, wr = 0;
 	    while(left > 0) {
 		int ret = stream.get(val, left);
@@ -0,0 +1,107 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven;
+
+import java.nio.*;
+
+/*
+ * A message reading from a ByteBuffer, typically a mapping of a
+ * cache file. Buffers with a backing array are read in place;
+ * others are copied into the read window in large chunks as it
+ * drains, so no intermediate streams or whole-file copies are
+ * involved.
+ */
+public class BufferMessage extends Message {
+    public static final int WINDOW = 8192;
+    private final ByteBuffer bk;
+    private final boolean inplace;
+
+    public BufferMessage(ByteBuffer bk) {
+	this.bk = bk.slice();
+	if(this.inplace = this.bk.hasArray()) {
+	    this.rbuf = this.bk.array();
+	    this.rh = this.bk.arrayOffset();
+	    this.rt = this.rh + this.bk.remaining();
+	    this.bk.position(this.bk.limit());
+	}
+    }
+
+    public boolean underflow(int hint) {
+	if(!bk.hasRemaining())
+	    return(false);
+	int cur = rt - rh;
+	int len = Math.min(bk.remaining(), Math.max(hint, WINDOW));
+	if(cur + len > rbuf.length) {
+	    byte[] n = new byte[cur + len];
+	    System.arraycopy(rbuf, rh, n, 0, cur);
+	    rbuf = n;
+	} else {
+	    System.arraycopy(rbuf, rh, rbuf, 0, cur);
+	}
+	rh = 0;
+	rt = cur;
+	bk.get(rbuf, rt, len);
+	rt += len;
+	return(true);
+    }
+
+    /* Returns a message of the next len bytes, consuming them from
+     * this one, without copying more than what may already have
+     * been read into the window. */
+    public Message slice(int len) {
+	int cur = rt - rh;
+	if(len > cur + bk.remaining())
+	    throw(new EOF(String.format("Required %d bytes, got only %d", len, cur + bk.remaining())).msg(this));
+	if(inplace) {
+	    Message ret = new MessageBuf(rbuf, rh, len);
+	    rh += len;
+	    return(ret);
+	}
+	if(len <= cur)
+	    return(new MessageBuf(bytes(len)));
+	/* The window always holds the bytes immediately preceding
+	 * the current buffer position. */
+	int start = bk.position() - cur;
+	ByteBuffer sub = bk.duplicate();
+	sub.limit(start + len).position(start);
+	bk.position(start + len);
+	rh = rt = 0;
+	return(new BufferMessage(sub));
+    }
+
+    public int remaining() {
+	return((rt - rh) + bk.remaining());
+    }
+
+    public void overflow(int min) {
+	throw(new RuntimeException("BufferMessage is not writeable"));
+    }
+
+    public String toString() {
+	return(String.format("#<buffer-message %d+%d left>", rt - rh, bk.remaining()));
+    }
+}
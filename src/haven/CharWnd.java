@@ -349,6 +349,7 @@ public class CharWnd extends WindowX {
 
     public CharWnd(Glob glob) {
 	super(UI.scale(new Coord(300, 290)), "Character Sheet");
+	setcached(true);
 
 	tabs = new Tabs(new Coord(15, 10), UI.scale(506, 315), this);
         battrtab = tabs.add();
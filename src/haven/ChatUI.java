@@ -67,6 +67,7 @@ public class ChatUI extends Widget {
 	chansel = add(new Selector(new Coord(selw, sz.y - marg.y)), marg);
 	setfocusctl(true);
 	setcanfocus(true);
+	setcached(true);
     }
 
     protected void added() {
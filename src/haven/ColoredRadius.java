@@ -65,9 +65,10 @@ public class ColoredRadius implements RenderTree.Node {
 	FloatBuffer posb = posa.data;
 	int n = posa.size() / 2;
 	try {
-	    float bz = (float) glob.map.getcz(c.x, c.y);
+	    MCache.Sampler smp = glob.map.sampler();
+	    float bz = (float) smp.getcz(c.x, c.y);
 	    for (int i = 0; i < n; i++) {
-		float z = (float) glob.map.getcz(c.x + posb.get(i * 3), c.y - posb.get(i * 3 + 1)) - bz;
+		float z = (float) smp.getcz(c.x + posb.get(i * 3), c.y - posb.get(i * 3 + 1)) - bz;
 		posb.put(i * 3 + 2, z + 10);
 		posb.put((n + i) * 3 + 2, z - 10);
 	    }
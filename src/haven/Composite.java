@@ -137,7 +137,22 @@ public class Composite extends Drawable implements EquipTarget {
 	    updequ();
 	}
 	processResId();
-	comp.tick(dt);
+	comp.tick(dt, animival());
+    }
+
+    /* Animates gobs at a reduced rate the further they are from the
+     * view center, and not at all while they are culled. */
+    private double animival() {
+	if(!CFG.DISPLAY_ANIM_LOD.get())
+	    return(0);
+	if(gob.culled)
+	    return(Double.POSITIVE_INFINITY);
+	double near = CFG.DISPLAY_ANIM_LOD_DIST.get() * MCache.tilesz.x;
+	if(gob.viewdist > near * 2)
+	    return(0.2);
+	if(gob.viewdist > near)
+	    return(0.1);
+	return(0);
     }
 
     public void gtick(Render g) {
@@ -39,6 +39,7 @@ public class Composited implements RenderTree.Node, EquipTarget {
     public Collection<Model> mod = new ArrayList<Model>();
     public Collection<Equipped> equ = new ArrayList<Equipped>();
     public Poses poses = new Poses();
+    private double lodacc = 0;
     public List<MD> cmod = new LinkedList<MD>();
     public List<ED> cequ = new LinkedList<ED>();
     private final Collection<RenderTree.Slot> slots = new ArrayList<>(1);
@@ -70,7 +71,7 @@ public class Composited implements RenderTree.Node, EquipTarget {
 	private void rebuild() {
 	    pose.reset();
 	    for(PoseMod m : mods)
-		m.apply(pose);
+		m.papply(pose);
 	    if(ipold > 0.0f)
 		pose.blend(old, ipold);
 	    pose.gbuild();
@@ -82,6 +83,7 @@ public class Composited implements RenderTree.Node, EquipTarget {
 		this.ipold = 1.0f;
 	    }
 	    Composited.this.poses = this;
+	    lodacc = 0;
 	    rebuild();
 	}
 
@@ -614,13 +616,25 @@ public class Composited implements RenderTree.Node, EquipTarget {
     public void draw(GOut g) {
     }
     
-    public void tick(double dt) {
-	if(poses != null)
-	    poses.tick((float)dt);
+    /* Ticks the poses only once every ival seconds, with all the
+     * time passed since they were last ticked, so that models far
+     * away can be animated at a reduced rate. An infinite interval
+     * freezes them until a finite one is given again. */
+    public void tick(double dt, double ival) {
+	if(poses != null) {
+	    if((lodacc += dt) >= ival) {
+		poses.tick((float)lodacc);
+		lodacc = 0;
+	    }
+	}
 	for(Equipped equ : this.equ)
 	    equ.tick(dt);
     }
 
+    public void tick(double dt) {
+	tick(dt, 0);
+    }
+
     public void gtick(Render g) {
 	for(Equipped equ : this.equ)
 	    equ.gtick(g);
@@ -35,6 +35,11 @@ import java.nio.channels.*;
 public class Connection {
     private static final double ACK_HOLD = 0.030;
     private static final double OBJACK_HOLD = 0.08, OBJACK_HOLD_MAX = 0.5;
+    private static final int RECV_WINDOW = 1024;
+    /* Retransmit timer wheel; its horizon must cover the longest
+     * retransmit interval. */
+    private static final double WHEEL_TICK = 0.01;
+    private static final int WHEEL_SLOTS = 256;
     public final SocketAddress server;
     public final String username;
     private final Collection<Callback> cbs = new ArrayList<>();
@@ -44,6 +49,7 @@ public class Connection {
     private Worker worker;
     private int tseq;
     private boolean alive = true;
+    private volatile SessionRecord.Writer rec = null;
 
     public Connection(SocketAddress server, String username) {
 	this.server = server;
@@ -66,10 +72,26 @@ public class Connection {
 	}
     }
 
+    /* A connection without a socket, which only ever gets traffic
+     * through the replay methods, and drops everything sent. */
+    Connection(String username) {
+	this.server = null;
+	this.username = username;
+	this.sk = null;
+	this.sel = null;
+	this.key = null;
+    }
+
     public static interface Callback {
 	public default void closed() {};
 	public default void handle(PMessage msg) {};
 	public default void handle(OCache.ObjDelta delta) {};
+	/* The deltas of one packet. They are recycled afterwards, and
+	 * must not be kept past the call. */
+	public default void handle(OCache.ObjDelta[] deltas, int n) {
+	    for(int i = 0; i < n; i++)
+		handle(deltas[i]);
+	};
 	public default void mapdata(Message msg) {};
 
 	public static final Callback dump = new Callback() {
@@ -88,6 +110,10 @@ public class Connection {
 	return(this);
     }
 
+    public void record(SessionRecord.Writer rec) {
+	this.rec = rec;
+    }
+
     private class Worker extends HackThread {
 	private Task init;
 	
@@ -113,6 +139,9 @@ public class Connection {
 		    try {
 			sk.close();
 			sel.close();
+			SessionRecord.Writer rec = Connection.this.rec;
+			if(rec != null)
+			    rec.close();
 		    } catch(IOException e) {
 			throw(new RuntimeException(e));
 		    }
@@ -156,6 +185,8 @@ public class Connection {
     }
 
     public void send(ByteBuffer msg) {
+	if(sk == null)
+	    return;
 	try {
 	    sk.write(msg);
 	} catch(IOException e) {
@@ -174,6 +205,8 @@ public class Connection {
     }
 
     public void close() {
+	if(sk == null)
+	    return;
 	if(worker == null)
 	    throw(new IllegalStateException());
 	worker.interrupt();
@@ -186,10 +219,62 @@ public class Connection {
     }
 
     private void wake() {
-	sel.wakeup();
+	if(sel != null)
+	    sel.wakeup();
+    }
+
+    /* Unacked outgoing messages, indexed by sequence number. The
+     * window is [pendhead, tseq), of which [pendsent, tseq) has not
+     * yet been sent at all. */
+    private final Object pendlock = new Object();
+    private RMessage[] pending = new RMessage[256];
+    private int pendhead, pendsent;
+
+    private static int seqd(int a, int b) {
+	return((a - b) & 0xffff);
+    }
+
+    private final Stats stats = new Stats();
+    public static class Stats {
+	public double srtt = -1, rttvar;
+	public int rttsamples;
+	public long sent, retransmits;
+	public long received, duplicates, reordered, dropped;
+	public int reorderdepth, maxreorder;
+	public double ackdelay, maxackdelay;
+	public int window;
+
+	void rtt(double sample) {
+	    if(srtt < 0) {
+		srtt = sample;
+		rttvar = sample / 2;
+	    } else {
+		rttvar = (0.75 * rttvar) + (0.25 * Math.abs(srtt - sample));
+		srtt = (0.875 * srtt) + (0.125 * sample);
+	    }
+	    rttsamples++;
+	}
+
+	void ackdelay(double d) {
+	    ackdelay = (ackdelay == 0) ? d : ((0.875 * ackdelay) + (0.125 * d));
+	    maxackdelay = Math.max(maxackdelay, d);
+	}
+
+	public String toString() {
+	    return(String.format("rtt %.1f ms (var %.1f, %d samples), sent %d, retx %d, window %d; " +
+				 "received %d, dup %d, reordered %d (depth %d, max %d), dropped %d; ack delay %.1f ms (max %.1f)",
+				 srtt * 1000, rttvar * 1000, rttsamples, sent, retransmits, window,
+				 received, duplicates, reordered, reorderdepth, maxreorder, dropped,
+				 ackdelay * 1000, maxackdelay * 1000));
+	}
     }
 
-    private final List<RMessage> pending = new LinkedList<>();
+    public String stats() {
+	synchronized(pendlock) {
+	    stats.window = seqd(tseq, pendhead);
+	    return(stats.toString());
+	}
+    }
 
     private class Connect implements Task {
 	private final PMessage msg;
@@ -264,16 +349,85 @@ public class Connection {
 	int frame;
 	double frecv, lrecv;
 
-	ObjAck(long id, int frame, double recv) {
+	ObjAck set(long id, int frame, double recv) {
 	    this.id = id;
 	    this.frame = frame;
 	    this.frecv = this.lrecv = recv;
+	    return(this);
+	}
+    }
+
+    /* Decodes object data packets into recycled deltas. Attribute
+     * data is sliced out of the packet rather than copied, since
+     * packet buffers are never reused. */
+    private static class DeltaBuf {
+	OCache.ObjDelta[] buf = new OCache.ObjDelta[16];
+	int n;
+
+	private OCache.ObjDelta next(int fl, long id, int frame) {
+	    if(n >= buf.length)
+		buf = Arrays.copyOf(buf, buf.length * 2);
+	    OCache.ObjDelta ret = buf[n];
+	    if(ret == null)
+		buf[n] = ret = new OCache.ObjDelta();
+	    ret.reset(fl, id, frame);
+	    n++;
+	    return(ret);
+	}
+
+	void decode(Message msg) {
+	    n = 0;
+	    while(!msg.eom()) {
+		int fl = msg.uint8();
+		long id = msg.uint32();
+		int fr = msg.int32();
+		OCache.ObjDelta delta = next(fl, id, fr);
+		if((fl & 1) != 0)
+		    delta.initframe = fr;
+		if((fl & 8) != 0)
+		    delta.initframe = msg.int32();
+		while(true) {
+		    int afl = 0, len, type = msg.uint8();
+		    if(type == OCache.OD_END)
+			break;
+		    if((type & 0x80) == 0) {
+			len = (type & 0x78) >> 3;
+			if(len > 0)
+			    len++;
+			type = OCache.compodmap[type & 0x7];
+		    } else {
+			type = type & 0x7f;
+			if(((afl = msg.uint8()) & 0x80) == 0) {
+			    len = afl & 0x7f;
+			    afl = 0;
+			} else {
+			    len = msg.uint16();
+			}
+		    }
+		    if(type == OCache.OD_REM) {
+			delta.rem = true;
+			msg.skip(len);
+		    } else if((msg instanceof MessageBuf) && (msg.rt - msg.rh >= len)) {
+			delta.attrs.add(new OCache.AttrDelta(delta, type, msg.rbuf, msg.rh, len));
+			msg.rh += len;
+		    } else {
+			delta.attrs.add(new OCache.AttrDelta(delta, type, msg, len));
+		    }
+		}
+	    }
 	}
     }
 
     private class Main implements Task {
-	private final Map<Short, RMessage> waiting = new HashMap<>();
-	private final Map<Long, ObjAck> objacks = new HashMap<>();
+	private final RMessage[] waiting = new RMessage[RECV_WINDOW];
+	private int nwaiting = 0;
+	private final RMessage[] wheel = new RMessage[WHEEL_SLOTS];
+	private long wtick = -1;
+	private int wcount = 0;
+	private final LongMultiMap<ObjAck> objacks = new LongMultiMap<>();
+	private final List<ObjAck> freeacks = new ArrayList<>();
+	private ObjAck[] ackbuf = new ObjAck[0];
+	private final DeltaBuf deltas = new DeltaBuf();
 	private double now, lasttx;
 	private short rseq, ackseq;
 	private double acktime = -1;
@@ -306,6 +460,9 @@ public class Connection {
 		    }
 		}
 	    } else {
+		SessionRecord.Writer rec = Connection.this.rec;
+		if(rec != null)
+		    rec.rel(msg);
 		for(Callback cb : cbs)
 		    cb.handle(msg);
 	    }
@@ -313,16 +470,40 @@ public class Connection {
 
 	private void gotrel(RMessage msg) {
 	    short sd = (short)(msg.seq - rseq);
+	    stats.received++;
 	    if(sd == 0) {
 		short lastack;
 		do {
 		    handlerel(msg);
 		    lastack = rseq++;
-		    msg = waiting.remove(rseq);
+		    int i = rseq & (RECV_WINDOW - 1);
+		    if(((msg = waiting[i]) != null) && ((short)msg.seq == rseq)) {
+			waiting[i] = null;
+			nwaiting--;
+		    } else {
+			msg = null;
+		    }
 		} while(msg != null);
+		stats.reorderdepth = nwaiting;
 		sendack(lastack);
 	    } else if(sd > 0) {
-		waiting.put((short)msg.seq, msg);
+		if(sd >= RECV_WINDOW) {
+		    /* The server will have to resend it. */
+		    stats.dropped++;
+		    return;
+		}
+		int i = msg.seq & (RECV_WINDOW - 1);
+		if(waiting[i] == null) {
+		    nwaiting++;
+		    stats.reordered++;
+		    stats.maxreorder = Math.max(stats.maxreorder, sd);
+		} else {
+		    stats.duplicates++;
+		}
+		waiting[i] = msg;
+		stats.reorderdepth = nwaiting;
+	    } else {
+		stats.duplicates++;
 	    }
 	}
 
@@ -333,14 +514,16 @@ public class Connection {
 	}
 
 	private void gotack(short seq) {
-	    synchronized(pending) {
-		for(Iterator<RMessage> i = pending.iterator(); i.hasNext();) {
-		    RMessage msg = i.next();
-		    short sd = (short)(msg.seq - seq);
-		    if(sd <= 0)
-			i.remove();
-		    else
-			break;
+	    synchronized(pendlock) {
+		int mask = pending.length - 1;
+		while((pendhead != pendsent) && ((short)(pendhead - seq) <= 0)) {
+		    RMessage msg = pending[pendhead & mask];
+		    pending[pendhead & mask] = null;
+		    /* Only unambiguous samples; see Karn's algorithm. */
+		    if(msg.retx == 1)
+			stats.rtt(now - msg.last);
+		    msg.retx = -1;
+		    pendhead = (pendhead + 1) & 0xffff;
 		}
 	    }
 	}
@@ -351,48 +534,18 @@ public class Connection {
 	}
 
 	private void gotobjdata(Message msg) {
-	    while(!msg.eom()) {
-		int fl = msg.uint8();
-		long id = msg.uint32();
-		int fr = msg.int32();
-		OCache.ObjDelta delta = new OCache.ObjDelta(fl, id, fr);
-		if((fl & 1) != 0)
-		    delta.initframe = fr;
-		if((fl & 8) != 0)
-		    delta.initframe = msg.int32();
-		while(true) {
-		    int afl = 0, len, type = msg.uint8();
-		    if(type == OCache.OD_END)
-			break;
-		    if((type & 0x80) == 0) {
-			len = (type & 0x78) >> 3;
-			if(len > 0)
-			    len++;
-			type = OCache.compodmap[type & 0x7];
-		    } else {
-			type = type & 0x7f;
-			if(((afl = msg.uint8()) & 0x80) == 0) {
-			    len = afl & 0x7f;
-			    afl = 0;
-			} else {
-			    len = msg.uint16();
-			}
-		    }
-		    OCache.AttrDelta attr = new OCache.AttrDelta(delta, type, msg, len);
-		    if(type == OCache.OD_REM) {
-			delta.rem = true;
-		    } else {
-			delta.attrs.add(attr);
-		    }
-		}
-		for(Callback cb : cbs)
-		    cb.handle(delta);
-		ObjAck ack = objacks.get(id);
+	    deltas.decode(msg);
+	    for(Callback cb : cbs)
+		cb.handle(deltas.buf, deltas.n);
+	    for(int i = 0; i < deltas.n; i++) {
+		OCache.ObjDelta delta = deltas.buf[i];
+		ObjAck ack = objacks.get(delta.id);
 		if(ack == null) {
-		    objacks.put(id, ack = new ObjAck(id, fr, now));
+		    ack = freeacks.isEmpty() ? new ObjAck() : freeacks.remove(freeacks.size() - 1);
+		    objacks.put(delta.id, ack.set(delta.id, delta.frame, now));
 		} else {
-		    if(fr > ack.frame) {
-			ack.frame = fr;
+		    if(delta.frame > ack.frame) {
+			ack.frame = delta.frame;
 			ack.lrecv = now;
 		    }
 		}
@@ -424,10 +577,16 @@ public class Connection {
 		break;
 	    }
 	    case Session.MSG_MAPDATA: {
+		SessionRecord.Writer rec = Connection.this.rec;
+		if(rec != null)
+		    rec.packet(msg);
 		gotmapdata(msg);
 		break;
 	    }
 	    case Session.MSG_OBJDATA: {
+		SessionRecord.Writer rec = Connection.this.rec;
+		if(rec != null)
+		    rec.packet(msg);
 		gotobjdata(msg);
 		break;
 	    }
@@ -438,42 +597,84 @@ public class Connection {
 	    return((a < 0) ? b : Math.min(a, b));
 	}
 
+	private void transmit(RMessage msg) {
+	    PMessage rmsg = new PMessage(Session.MSG_REL);
+	    rmsg.adduint16(msg.seq).adduint8(msg.type).addbytes(msg.fin());
+	    send(rmsg);
+	    if(msg.retx > 0)
+		stats.retransmits++;
+	    stats.sent++;
+	    msg.last = now;
+	    msg.retx++;
+	    lasttx = now;
+	    double txtime;
+	    if(msg.retx <= 1)
+		txtime = 0.08;
+	    else if(msg.retx <= 3)
+		txtime = 0.20;
+	    else if(msg.retx <= 9)
+		txtime = 0.62;
+	    else
+		txtime = 2.00;
+	    schedule(msg, now + txtime);
+	}
+
+	private void schedule(RMessage msg, double due) {
+	    msg.due = due;
+	    int slot = (int)((long)Math.floor(due / WHEEL_TICK) & (WHEEL_SLOTS - 1));
+	    msg.wnext = wheel[slot];
+	    wheel[slot] = msg;
+	    wcount++;
+	}
+
 	private double sendpending() {
-	    double mint = -1;
-	    synchronized(pending) {
-		for(RMessage msg : pending) {
-		    double txtime;
-		    if(msg.retx == 0)
-			txtime = 0;
-		    else if(msg.retx <= 1)
-			txtime = 0.08;
-		    else if(msg.retx <= 3)
-			txtime = 0.20;
-		    else if(msg.retx <= 9)
-			txtime = 0.62;
-		    else
-			txtime = 2.00;
-		    txtime = msg.last + txtime;
-		    if(now >= txtime) {
-			PMessage rmsg = new PMessage(Session.MSG_REL);
-			rmsg.adduint16(msg.seq).adduint8(msg.type).addbytes(msg.fin());
-			send(rmsg);
-			msg.last = now;
-			msg.retx++;
-			lasttx = now;
-		    } else {
-			mint = min2(mint, txtime);
+	    synchronized(pendlock) {
+		int mask = pending.length - 1;
+		for(; pendsent != tseq; pendsent = (pendsent + 1) & 0xffff)
+		    transmit(pending[pendsent & mask]);
+		long cur = (long)Math.floor(now / WHEEL_TICK);
+		if(wtick < 0)
+		    wtick = cur;
+		for(long t = Math.max(wtick, cur - WHEEL_SLOTS + 1); t <= cur; t++) {
+		    int slot = (int)(t & (WHEEL_SLOTS - 1));
+		    RMessage msg = wheel[slot];
+		    wheel[slot] = null;
+		    while(msg != null) {
+			RMessage next = msg.wnext;
+			msg.wnext = null;
+			wcount--;
+			if(msg.retx < 0) {
+			    /* Acked since it was scheduled. */
+			} else if(msg.due <= now) {
+			    transmit(msg);
+			} else {
+			    schedule(msg, msg.due);
+			}
+			msg = next;
 		    }
 		}
+		wtick = cur;
+		if(wcount == 0)
+		    return(-1);
+		double mint = -1;
+		for(long t = cur; t < cur + WHEEL_SLOTS; t++) {
+		    for(RMessage msg = wheel[(int)(t & (WHEEL_SLOTS - 1))]; msg != null; msg = msg.wnext)
+			mint = min2(mint, msg.due);
+		    if(mint >= 0)
+			break;
+		}
+		return(mint);
 	    }
-	    return(mint);
 	}
 
 	private double sendobjacks() {
 	    double mint = -1;
 	    PMessage msg = null;
-	    for(Iterator<ObjAck> i = objacks.values().iterator(); i.hasNext();) {
-		ObjAck ack = i.next();
+	    int n = objacks.size();
+	    ackbuf = objacks.toArray(ackbuf);
+	    for(int i = 0; i < n; i++) {
+		ObjAck ack = ackbuf[i];
+		ackbuf[i] = null;
 		double txtime = Math.min(ack.lrecv + OBJACK_HOLD, ack.frecv + OBJACK_HOLD_MAX);
 		if(txtime <= now) {
 		    if(msg == null) {
@@ -484,7 +685,8 @@ public class Connection {
 		    }
 		    msg.adduint32(ack.id);
 		    msg.addint32(ack.frame);
-		    i.remove();
+		    objacks.remove(ack.id, ack);
+		    freeacks.add(ack);
 		} else {
 		    mint = min2(mint, txtime);
 		}
@@ -530,6 +732,7 @@ public class Connection {
 		pendto = min2(sendpending(), sendobjacks());
 		if((acktime > 0) && (now - acktime >= ACK_HOLD)) {
 		    send((PMessage)new PMessage(Session.MSG_ACK).adduint16(ackseq));
+		    stats.ackdelay(now - acktime);
 		    acktime = -1;
 		    lasttx = now;
 		}
@@ -583,12 +786,45 @@ public class Connection {
 	}
     }
 
+    /* Delivery of recorded traffic, for connections without a
+     * socket. */
+    void replayrel(PMessage msg) {
+	for(Callback cb : cbs)
+	    cb.handle(msg);
+    }
+
+    void replaymap(Message msg) {
+	for(Callback cb : cbs)
+	    cb.mapdata(msg);
+    }
+
+    private final DeltaBuf replaydeltas = new DeltaBuf();
+    void replayobj(Message msg) {
+	replaydeltas.decode(msg);
+	for(Callback cb : cbs)
+	    cb.handle(replaydeltas.buf, replaydeltas.n);
+    }
+
+    void replayend() {
+	alive = false;
+	for(Callback cb : cbs)
+	    cb.closed();
+    }
+
     public void queuemsg(PMessage pmsg) {
+	if(sk == null)
+	    return;
 	RMessage msg = new RMessage(pmsg);
-	synchronized(pending) {
+	synchronized(pendlock) {
+	    if(seqd(tseq, pendhead) >= pending.length - 1) {
+		RMessage[] n = new RMessage[pending.length * 2];
+		for(int s = pendhead; s != tseq; s = (s + 1) & 0xffff)
+		    n[s & (n.length - 1)] = pending[s & (pending.length - 1)];
+		pending = n;
+	    }
 	    msg.seq = tseq;
+	    pending[tseq & (pending.length - 1)] = msg;
 	    tseq = (tseq + 1) & 0xffff;
-	    pending.add(msg);
 	}
 	wake();
     }
@@ -90,6 +90,7 @@ public class CraftDBWnd extends WindowX implements ICraftParent {
     
     public CraftDBWnd() {
 	super(WND_SZ.add(UI.scale(0, 5)), "Craft window");
+	setcached(true);
 	CFG.REAL_TIME_CURIO.observe(cfg -> updateDescription(descriptionPagina));
 	CFG.SHOW_CURIO_LPH.observe(cfg -> updateDescription(descriptionPagina));
     }
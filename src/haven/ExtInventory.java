@@ -51,6 +51,7 @@ public class ExtInventory extends Widget {
     public ExtInventory(Coord sz) {
 	inv = new Inventory(sz);
 	inv.ext = this;
+	setcached(true);
 	extension = new Extension();
 	chb_repeat.settip("$b{Toggle repeat mode}\nApply any menu action to\nall items in the group.", true);
 	chb_show
@@ -277,7 +277,7 @@ public interface GLPanel extends UIPanel, UI.Context {
 	    prevfree = free;
 	    FastText.aprintf(g, new Coord(10, y -= dy), 0, 1, "Mem: %,011d/%,011d/%,011d/%,011d (%,d)", free, total - free, total, rt.maxMemory(), framealloc);
 	    FastText.aprintf(g, new Coord(10, y -= dy), 0, 1, "State slots: %d", State.Slot.numslots());
-	    FastText.aprintf(g, new Coord(10, y -= dy), 0, 1, "GL progs: %d", buf.env.numprogs());
+	    FastText.aprintf(g, new Coord(10, y -= dy), 0, 1, "GL progs: %d (%s)", buf.env.numprogs(), buf.env.progstats());
 	    FastText.aprintf(g, new Coord(10, y -= dy), 0, 1, "V-Mem: %s", buf.env.memstats());
 	    MapView map = ui.root.findchild(MapView.class);
 	    if((map != null) && (map.back != null)) {
@@ -286,6 +286,7 @@ public interface GLPanel extends UIPanel, UI.Context {
 		// FastText.aprintf(g, new Coord(10, y -= dy), 0, 1, "Click: Map: %s, Obj: %s", map.clmaplist.stats(), map.clobjlist.stats());
 	    }
 	    FastText.aprintf(g, new Coord(10, y -= dy), 0, 1, "Async: L %s, D %s", ui.loader.stats(), Defer.gstats());
+	    FastText.aprintf(g, new Coord(10, y -= dy), 0, 1, "PCM cache: %s", Audio.PCMCache.global.stats());
 	    int rqd = Resource.local().qdepth() + Resource.remote().qdepth();
 	    if(rqd > 0)
 		FastText.aprintf(g, new Coord(10, y -= dy), 0, 1, "RQ depth: %d (%d)", rqd, Resource.local().numloaded() + Resource.remote().numloaded());
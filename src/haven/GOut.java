@@ -230,6 +230,10 @@ public class GOut {
     }
 
     public void atext(String text, Coord c, double ax, double ay) {
+	if(GlyphAtlas.simple(Text.std.font, text)) {
+	    Text.std.atlas().aprint(this, c, ax, ay, text);
+	    return;
+	}
 	Text t = Text.render(text);
 	Tex T = t.tex();
 	aimage(T, c, ax, ay);
@@ -0,0 +1,310 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+
+package haven;
+
+import java.util.*;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.nio.ByteBuffer;
+import haven.render.*;
+
+/*
+ * Draws plain strings from glyphs that are rasterized once per font
+ * and kept in a shared texture, instead of rendering every string
+ * into an image and a texture of its own. The output is meant to be
+ * pixel-identical to Text.Foundry.render(), save for kerning, which
+ * AWT does not apply to those either. Text that needs shaping
+ * (combining marks, right-to-left scripts, characters outside the
+ * BMP) is not handled; see simple().
+ */
+public class GlyphAtlas {
+    public static final VertexArray.Layout vf = new VertexArray.Layout(new VertexArray.Layout.Input(Ortho2D.pos, new VectorFormat(2, NumberFormat.FLOAT32), 0, 0, 32),
+								       new VertexArray.Layout.Input(ColorTex.texc, new VectorFormat(2, NumberFormat.FLOAT32), 0, 8, 32),
+								       new VertexArray.Layout.Input(VertexColor.color, new VectorFormat(4, NumberFormat.FLOAT32), 0, 16, 32));
+    private static final Map<Pair<Font, Boolean>, GlyphAtlas> atlases = new HashMap<>();
+    public static int resets = 0;
+    public final Font font;
+    public final boolean aa;
+    public final FontMetrics m;
+    private final int h, base, pad, dim;
+    private final Map<Character, Glyph> glyphs = new HashMap<>();
+    private final Texture2D tex;
+    private final ColorTex st;
+    private BufferedImage back;
+    private Graphics2D bg;
+    private int cx, cy;
+    /* Rows of the texture changed since its last upload. */
+    private int dirty0 = 0, dirty1 = 0;
+
+    public static class Glyph {
+	public final int x, y, w, adv;
+
+	private Glyph(int x, int y, int w, int adv) {
+	    this.x = x; this.y = y; this.w = w; this.adv = adv;
+	}
+    }
+
+    private GlyphAtlas(Font font, boolean aa) {
+	this.font = font;
+	this.aa = aa;
+	Graphics2D tmpl = TexI.mkbuf(new Coord(1, 1)).createGraphics();
+	tmpl.setFont(font);
+	this.m = tmpl.getFontMetrics();
+	tmpl.dispose();
+	this.h = m.getHeight();
+	/* See Text.Foundry.height(). */
+	this.base = m.getLeading() + m.getAscent();
+	/* Room on either side for glyphs overhanging their advance. */
+	this.pad = Math.max(1, m.getAscent() / 4);
+	this.dim = Tex.nextp2(Math.max(UI.scale(512), h * 8));
+	this.tex = new Texture2D(dim, dim, DataBuffer.Usage.STATIC, new VectorFormat(4, NumberFormat.UNORM8), this::fill);
+	Texture2D.Sampler2D data = new Texture2D.Sampler2D(tex);
+	data.magfilter(Texture.Filter.NEAREST).minfilter(Texture.Filter.NEAREST);
+	this.st = new ColorTex(data);
+	clear();
+    }
+
+    public static GlyphAtlas get(Font font, boolean aa) {
+	Pair<Font, Boolean> key = new Pair<>(font, aa);
+	synchronized(atlases) {
+	    GlyphAtlas ret = atlases.get(key);
+	    if(ret == null)
+		atlases.put(key, ret = new GlyphAtlas(font, aa));
+	    return(ret);
+	}
+    }
+
+    private void clear() {
+	/* A new image rather than a cleared one, since uploads
+	 * already queued may not have read the old one yet. */
+	if(bg != null)
+	    bg.dispose();
+	back = TexI.mkbuf(new Coord(dim, dim));
+	bg = back.createGraphics();
+	if(aa)
+	    Utils.AA(bg);
+	bg.setFont(font);
+	bg.setColor(Color.WHITE);
+	glyphs.clear();
+	cx = cy = 0;
+	dirty0 = 0;
+	dirty1 = dim;
+    }
+
+    private FillBuffer fill(Texture.Image<?> img, Environment env) {
+	FillBuffer buf = env.fillbuf(img);
+	buf.pull(ByteBuffer.wrap(((DataBufferByte)back.getRaster().getDataBuffer()).getData()));
+	return(buf);
+    }
+
+    /* Returns null when the atlas is full. */
+    private Glyph add(char c) {
+	int adv = m.charWidth(c), w = adv + (pad * 2);
+	if(cx + w > dim) {
+	    cx = 0;
+	    cy += h + 1;
+	}
+	if((cy + h > dim) || (w > dim))
+	    return(null);
+	bg.drawString(Character.toString(c), cx + pad, cy + base);
+	Glyph ret = new Glyph(cx, cy, w, adv);
+	cx += w + 1;
+	glyphs.put(c, ret);
+	if(dirty0 == dirty1) {
+	    dirty0 = cy;
+	    dirty1 = cy + h;
+	} else {
+	    dirty0 = Math.min(dirty0, cy);
+	    dirty1 = Math.max(dirty1, cy + h);
+	}
+	return(ret);
+    }
+
+    public synchronized Glyph glyph(char c) {
+	Glyph ret = glyphs.get(c);
+	if(ret == null)
+	    ret = add(c);
+	return(ret);
+    }
+
+    public static boolean simple(Font font, String text) {
+	for(int i = 0; i < text.length(); i++) {
+	    char c = text.charAt(i);
+	    if(Character.isSurrogate(c) || Character.isISOControl(c) || !font.canDisplay(c))
+		return(false);
+	    switch(Character.getType(c)) {
+	    case Character.NON_SPACING_MARK: case Character.COMBINING_SPACING_MARK: case Character.ENCLOSING_MARK:
+		return(false);
+	    }
+	    switch(Character.getDirectionality(c)) {
+	    case Character.DIRECTIONALITY_RIGHT_TO_LEFT: case Character.DIRECTIONALITY_RIGHT_TO_LEFT_ARABIC:
+		return(false);
+	    }
+	}
+	return(true);
+    }
+
+    public boolean simple(String text) {
+	return(simple(font, text));
+    }
+
+    public int height() {
+	return(h);
+    }
+
+    public int textw(String text) {
+	int r = 0;
+	for(int i = 0; i < text.length(); i++)
+	    r += m.charWidth(text.charAt(i));
+	return(r);
+    }
+
+    public Coord strsize(String text) {
+	return(new Coord(textw(text), h));
+    }
+
+    private void upload(Render out, BufferedImage img) {
+	byte[] data;
+	int from, to;
+	synchronized(this) {
+	    byte[] raw = ((DataBufferByte)img.getRaster().getDataBuffer()).getData();
+	    if(img == back) {
+		if(dirty0 == dirty1)
+		    return;
+		from = dirty0 * dim * 4;
+		to = dirty1 * dim * 4;
+		dirty0 = dirty1 = 0;
+		/* Glyphs may be added to it before the upload
+		 * happens. */
+		data = Arrays.copyOfRange(raw, from, to);
+	    } else {
+		/* Drawing quads laid out before a reset; the current
+		 * contents must be put back afterwards. */
+		from = 0;
+		to = raw.length;
+		dirty0 = 0;
+		dirty1 = dim;
+		data = raw;
+	    }
+	}
+	out.update(tex.image(0), (DataBuffer.PartFiller<Texture.Image<?>>)(timg, env, f, t) -> {
+		FillBuffer buf = env.fillbuf(timg, f, t);
+		buf.pull(ByteBuffer.wrap(data));
+		return(buf);
+	    }, from, to);
+    }
+
+    /* Collects the quads of a string, to be drawn with a single
+     * draw call, or two if the atlas is reset midway. */
+    private class Quads {
+	final GOut g;
+	private float[] data = new float[6 * 8 * 16];
+	private int n = 0;
+	private BufferedImage img = null;
+
+	Quads(GOut g) {
+	    this.g = g;
+	}
+
+	private void vertex(float x, float y, float u, float v, float[] col) {
+	    if(n + 8 > data.length)
+		data = Arrays.copyOf(data, data.length * 2);
+	    data[n++] = x; data[n++] = y; data[n++] = u; data[n++] = v;
+	    data[n++] = col[0]; data[n++] = col[1]; data[n++] = col[2]; data[n++] = col[3];
+	}
+
+	private void quad(Glyph gl, int x, int y, float[] col) {
+	    int x1 = x - pad, y1 = y, x2 = x1 + gl.w, y2 = y + h;
+	    int tx1 = gl.x, ty1 = gl.y;
+	    /* Clip to the GOut like Tex.crender does. */
+	    if((x1 >= g.br.x) || (y1 >= g.br.y) || (x2 <= g.ul.x) || (y2 <= g.ul.y))
+		return;
+	    if(x1 < g.ul.x) {tx1 += g.ul.x - x1; x1 = g.ul.x;}
+	    if(y1 < g.ul.y) {ty1 += g.ul.y - y1; y1 = g.ul.y;}
+	    if(x2 > g.br.x) x2 = g.br.x;
+	    if(y2 > g.br.y) y2 = g.br.y;
+	    float id = 1.0f / dim;
+	    float u1 = tx1 * id, v1 = ty1 * id, u2 = (tx1 + (x2 - x1)) * id, v2 = (ty1 + (y2 - y1)) * id;
+	    vertex(x1, y1, u1, v1, col); vertex(x1, y2, u1, v2, col); vertex(x2, y1, u2, v1, col);
+	    vertex(x1, y2, u1, v2, col); vertex(x2, y2, u2, v2, col); vertex(x2, y1, u2, v1, col);
+	}
+
+	void add(Coord c, double ax, double ay, String text, Color col) {
+	    float[] fc = col.getRGBComponents(null);
+	    int x = c.x + g.tx.x, y = c.y + g.tx.y;
+	    if(ax > 0)
+		x -= (int)Math.round(textw(text) * ax);
+	    if(ay > 0)
+		y -= (int)Math.round(h * ay);
+	    for(int i = 0; i < text.length(); i++) {
+		char ch = text.charAt(i);
+		Glyph gl;
+		synchronized(GlyphAtlas.this) {
+		    if((gl = glyph(ch)) == null) {
+			flush();
+			clear();
+			resets++;
+			gl = glyph(ch);
+		    }
+		    if((gl != null) && (img != back)) {
+			flush();
+			img = back;
+		    }
+		}
+		if(gl != null)
+		    quad(gl, x, y, fc);
+		x += m.charWidth(ch);
+	    }
+	}
+
+	void flush() {
+	    if(n > 0) {
+		upload(g.out, img);
+		g.out.draw1(g.state().copy().prep(st).prep(VertexColor.instance),
+			    new Model(Model.Mode.TRIANGLES,
+				      new VertexArray(vf, new VertexArray.Buffer(n * 4, DataBuffer.Usage.EPHEMERAL, DataBuffer.Filler.of(Arrays.copyOf(data, n)))),
+				      null, 0, n / 8));
+		n = 0;
+	    }
+	}
+    }
+
+    public void aprint(GOut g, Coord c, double ax, double ay, String text) {
+	Quads q = new Quads(g);
+	q.add(c, ax, ay, text, Color.WHITE);
+	q.flush();
+    }
+
+    public void print(GOut g, Coord c, String text) {
+	aprint(g, c, 0, 0, text);
+    }
+}
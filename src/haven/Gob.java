@@ -44,11 +44,17 @@ import static haven.OCache.*;
 
 public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner, EquipTarget, RandomSource {
     public Coord2d rc;
+    long gridcell = GobGrid.NOWHERE;
+    boolean gridded = false;
     public double a;
     public boolean virtual = false;
     int clprio = 0;
     public long id;
     public boolean removed = false;
+    /* Maintained by the map view's culling pass: whether the gob is
+     * out of view, and its distance from the view center. */
+    public volatile boolean culled = false;
+    public volatile float viewdist = 0;
     public final Glob glob;
     private boolean disposed = false;
     final Map<Class<? extends GAttrib>, GAttrib> attr = new HashMap<Class<? extends GAttrib>, GAttrib>();
@@ -69,7 +75,9 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner, Eq
     private StatusUpdates status = new StatusUpdates();
     private final CustomColor customColor = new CustomColor();
     private final GobCustomScale customScale = new GobCustomScale();
-    private final Set<GobTag> tags = new HashSet<>();
+    private final Object tagLock = new Object();
+    /* Replaced rather than modified, so that it can be read without the lock */
+    private volatile EnumSet<GobTag> tags = EnumSet.noneOf(GobTag.class);
     public boolean drivenByPlayer = false;
     public boolean mapProcessed = false;
     private long vehicleId = 0;
@@ -259,7 +267,7 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner, Eq
 	}
 
 	public Coord3f getc(Coord2d rc, double ra) {
-	    return(map.getzp(surf, rc));
+	    return(map.sampler().getzp(surf, rc.x, rc.y));
 	}
 
 	public Matrix4f getr(Coord2d rc, double ra) {
@@ -274,7 +282,7 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner, Eq
 
 	public Matrix4f getr(Coord2d rc, double ra) {
 	    Matrix4f ret = super.getr(rc, ra);
-	    Coord3f norm = map.getnorm(surf, rc);
+	    Coord3f norm = map.sampler().getnorm(surf, rc.x, rc.y);
 	    norm.y = -norm.y;
 	    Coord3f rot = Coord3f.zu.cmul(norm);
 	    float sin = rot.abs();
@@ -316,12 +324,13 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner, Eq
 			ro[i][o] = Coord2d.of((no[i][o].x * c) - (no[i][o].y * s), (no[i][o].y * c) + (no[i][o].x * s)).add(rc);
 		}
 	    }
+	    MCache.Sampler smp = map.sampler();
 	    float ret = Float.NaN;
 	    for(int i = 0; i < no.length; i++) {
 		for(int o = 0; o < ro[i].length; o++) {
 		    Coord2d a = ro[i][o], b = ro[i][(o + 1) % ro[i].length];
 		    for(Coord2d c : new Line2d.GridIsect(a, b, MCache.tilesz, false)) {
-			double z = map.getz(surf, c);
+			double z = smp.getz(surf, c.x, c.y);
 			if(Float.isNaN(ret) || (z < ret))
 			    ret = (float)z;
 		    }
@@ -383,8 +392,9 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner, Eq
 
 	private void recalc(Coord2d rc, double ra) {
 	    Coord2d rk = k.rot(ra);
-	    double maxz = map.getz(surf, rc.add(rk.mul(max)));
-	    double minz = map.getz(surf, rc.add(rk.mul(min)));
+	    MCache.Sampler smp = map.sampler();
+	    double maxz = smp.getz(surf, rc.x + (rk.x * max), rc.y + (rk.y * max));
+	    double minz = smp.getz(surf, rc.x + (rk.x * min), rc.y + (rk.y * min));
 	    Coord3f rax = Coord3f.of((float)-rk.y, (float)-rk.x, 0);
 	    float dz = (float)(maxz - minz);
 	    float dx = (float)(max - min);
@@ -452,10 +462,11 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner, Eq
 
 	private void recalc(Coord2d rc, double ra) {
 	    double s = Math.sin(ra), c = Math.cos(ra);
+	    MCache.Sampler smp = map.sampler();
 	    Coord3f[] pp = new Coord3f[points.length];
 	    for(int i = 0; i < pp.length; i++) {
-		Coord2d rv = Coord2d.of((points[i].x * c) - (points[i].y * s), (points[i].y * c) + (points[i].x * s));
-		pp[i] = map.getzp(surf, rv.add(rc));
+		double rx = (points[i].x * c) - (points[i].y * s), ry = (points[i].y * c) + (points[i].x * s);
+		pp[i] = smp.getzp(surf, rx + rc.x, ry + rc.y);
 	    }
 	    int I = 0, O = 1, U = 2;
 	    Coord3f mn = Coord3f.zu;
@@ -532,15 +543,20 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner, Eq
 	this(glob, c, -1);
     }
     
-    private Map<Class<? extends GAttrib>, GAttrib> cloneattrs() {
+    /* Snapshot of the attribute values for iterating over outside
+     * the lock, only rebuilt after the attributes have changed. */
+    private GAttrib[] attrv = null;
+    private static final GAttrib[] noattrs = {};
+    private GAttrib[] attrs() {
 	synchronized (this.attr) {
-	    return new HashMap<>(this.attr);
+	    if(attrv == null)
+		attrv = attr.isEmpty() ? noattrs : attr.values().toArray(noattrs);
+	    return(attrv);
 	}
     }
     
     public void ctick(double dt) {
-	Map<Class<? extends GAttrib>, GAttrib> attr = cloneattrs();
-	for(GAttrib a : attr.values())
+	for(GAttrib a : attrs())
 	    a.ctick(dt);
 	for(Iterator<Overlay> i = ols.iterator(); i.hasNext();) {
 	    Overlay ol = i.next();
@@ -759,8 +775,7 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner, Eq
     }
     
     public void tick() {
-	Map<Class<? extends GAttrib>, GAttrib> attr = cloneattrs();
-	for (GAttrib a : attr.values())
+	for (GAttrib a : attrs())
 	    a.tick();
     }
     
@@ -784,8 +799,7 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner, Eq
 	    disposed = true;
 	    removalLock.notifyAll();
 	}
-	Map<Class<? extends GAttrib>, GAttrib> attr = cloneattrs();
-	for(GAttrib a : attr.values()) {
+	for(GAttrib a : attrs()) {
 	    if(a instanceof Moving) {updateMovingInfo(null, a);}
 	    a.dispose();
 	}
@@ -801,6 +815,8 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner, Eq
 	}
 	this.rc = c;
 	this.a = a;
+	if(gridded)
+	    glob.oc.moved(this);
     }
     
     public Boolean isMe() {
@@ -896,6 +912,7 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner, Eq
     private void setattr(Class<? extends GAttrib> ac, GAttrib a) {
 	GAttrib prev;
 	synchronized (attr) {
+	    attrv = null;
 	    prev = attr.remove(ac);
 	    if(prev != null) {
 		if((prev instanceof RenderTree.Node) && (prev.slots != null))
@@ -949,7 +966,7 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner, Eq
     }
 
     public Supplier<? extends Pipe.Op> eqpoint(String nm, Message dat) {
-	for(GAttrib attr : this.attr.values()) {
+	for(GAttrib attr : attrs()) {
 	    if(attr instanceof EquipTarget) {
 		Supplier<? extends Pipe.Op> ret = ((EquipTarget)attr).eqpoint(nm, dat);
 		if(ret != null)
@@ -1071,8 +1088,7 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner, Eq
 	    if(ol.slots != null)
 		slot.add(ol);
 	}
-	Map<Class<? extends GAttrib>, GAttrib> attr = cloneattrs();
-	for(GAttrib a : attr.values()) {
+	for(GAttrib a : attrs()) {
 	    if(a instanceof RenderTree.Node && !a.skipRender)
 		slot.add((RenderTree.Node) a);
 	}
@@ -1332,9 +1348,64 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner, Eq
 	    return((this.cur != null) ? this.cur.oc : null);
 	}
 
+	private Drawable bsrc = null;
+	private float[] bsphere = null;
+	/* A rough bounding sphere, as a height above the gob's origin
+	 * and a radius, taken from the meshes of its resource. Since
+	 * animations, overlays and attachments are not accounted for,
+	 * the radius is given some margin. */
+	public float[] bsphere() {
+	    Drawable d = drawable;
+	    if((bsphere != null) && (bsrc == d))
+		return(bsphere);
+	    float[] ret = {5, 11};
+	    Resource res = null;
+	    try {
+		if(d != null)
+		    res = d.getres();
+	    } catch(Loading l) {
+		return(ret);
+	    }
+	    if(res != null) {
+		Coord3f n = null, p = null;
+		for(FastMesh.MeshRes mr : res.layers(FastMesh.MeshRes.class)) {
+		    if(mr.m == null)
+			continue;
+		    Volume3f b = mr.m.bounds();
+		    if(b.n == null)
+			continue;
+		    n = (n == null) ? Coord3f.of(b.n) : Coord3f.of(Math.min(n.x, b.n.x), Math.min(n.y, b.n.y), Math.min(n.z, b.n.z));
+		    p = (p == null) ? Coord3f.of(b.p) : Coord3f.of(Math.max(p.x, b.p.x), Math.max(p.y, b.p.y), Math.max(p.z, b.p.z));
+		}
+		if(n != null) {
+		    /* Centered on the vertical axis, so that rotation
+		     * does not matter. */
+		    float cz = (n.z + p.z) / 2;
+		    float hx = Math.max(Math.abs(n.x), Math.abs(p.x)), hy = Math.max(Math.abs(n.y), Math.abs(p.y)), hz = (p.z - n.z) / 2;
+		    ret = new float[] {cz, Math.max((float)Math.sqrt((hx * hx) + (hy * hy) + (hz * hz)) * 1.25f, 2)};
+		}
+		bsrc = d;
+		bsphere = ret;
+	    }
+	    return(ret);
+	}
+
 	public TickList.Ticking ticker() {return(this);}
     }
     
+    /* How far things drawn around the gob on the ground, such as
+     * range rings, reach beyond what its bounding sphere covers. */
+    public float extent() {
+	float ret = 0;
+	GobRadius radius = this.radius;
+	if(radius != null)
+	    ret = Math.max(ret, radius.radius);
+	GobWarning warning = this.warning;
+	if(warning != null)
+	    ret = Math.max(ret, warning.radius());
+	return(ret);
+    }
+    
     public void highlight() {
 	GobHighlight h = getattr(GobHighlight.class);
 	if(h == null) {
@@ -1436,19 +1507,26 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner, Eq
     public final Placed placed = new Placed();
     
     private void updateTags() {
-	Set<GobTag> tags = GobTag.tags(this);
-	synchronized (this.tags) {
-	    this.tags.clear();
-	    this.tags.addAll(tags);
-	}
+	EnumSet<GobTag> tags = GobTag.tags(this);
+	synchronized (tagLock) { this.tags = tags; }
     }
     
     public void tag(GobTag tag) {
-	synchronized (this.tags) { this.tags.add(tag); }
+	synchronized (tagLock) {
+	    if(tags.contains(tag)) {return;}
+	    EnumSet<GobTag> tags = this.tags.clone();
+	    tags.add(tag);
+	    this.tags = tags;
+	}
     }
     
     public void untag(GobTag tag) {
-	synchronized (this.tags) { this.tags.remove(tag); }
+	synchronized (tagLock) {
+	    if(!tags.contains(tag)) {return;}
+	    EnumSet<GobTag> tags = this.tags.clone();
+	    tags.remove(tag);
+	    this.tags = tags;
+	}
     }
     
     private void updateWarnings() {
@@ -1462,16 +1540,13 @@ public class Gob implements RenderTree.Node, Sprite.Owner, Skeleton.ModOwner, Eq
     }
     
     public boolean is(GobTag tag) {
-	synchronized (tags) {
-	    return tags.contains(tag);
-	}
+	return tags.contains(tag);
     }
     
     public boolean anyOf(GobTag... tags) {
-	synchronized (this.tags) {
-	    for (GobTag tag : tags) {
-		if(is(tag)) {return true;}
-	    }
+	EnumSet<GobTag> cur = this.tags;
+	for (GobTag tag : tags) {
+	    if(cur.contains(tag)) {return true;}
 	}
 	return false;
     }
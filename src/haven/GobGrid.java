@@ -0,0 +1,195 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven;
+
+import java.util.*;
+import java.util.function.*;
+
+/*
+ * Uniform grid over the positions of the objects in an OCache, so
+ * that searches for nearby objects only look at the objects in the
+ * cells concerned rather than at all of them. It is kept up to date
+ * by OCache as objects are added, removed and moved, and is guarded
+ * by the OCache's lock.
+ */
+public class GobGrid {
+    public static final double CELL = MCache.tilesz.x * 10;
+    static final long NOWHERE = Long.MIN_VALUE;
+    private final LongMultiMap<Gob> cells = new LongMultiMap<>();
+    /* Bounds of the occupied cells, which are recomputed when a cell
+     * on their edge is emptied, so that searches do not keep
+     * scanning areas that objects have since left. */
+    private int minx = Integer.MAX_VALUE, miny = Integer.MAX_VALUE;
+    private int maxx = Integer.MIN_VALUE, maxy = Integer.MIN_VALUE;
+    private boolean rebound = false;
+
+    private static int cell(double v) {
+	return((int)Math.floor(v / CELL));
+    }
+
+    private static long key(int x, int y) {
+	return(((long)x << 32) | (y & 0xffffffffL));
+    }
+
+    private static long key(Coord2d c) {
+	if(c == null)
+	    return(NOWHERE);
+	return(key(cell(c.x), cell(c.y)));
+    }
+
+    private void place(Gob gob, long k) {
+	gob.gridcell = k;
+	if(k == NOWHERE)
+	    return;
+	cells.put(k, gob);
+	int x = (int)(k >> 32), y = (int)k;
+	minx = Math.min(minx, x); maxx = Math.max(maxx, x);
+	miny = Math.min(miny, y); maxy = Math.max(maxy, y);
+    }
+
+    private void unplace(Gob gob) {
+	long k = gob.gridcell;
+	if(k == NOWHERE)
+	    return;
+	cells.remove(k, gob);
+	int x = (int)(k >> 32), y = (int)k;
+	if(((x == minx) || (x == maxx) || (y == miny) || (y == maxy)) && cells.getall(k).isEmpty())
+	    rebound = true;
+    }
+
+    private void rebound() {
+	if(!rebound)
+	    return;
+	minx = miny = Integer.MAX_VALUE;
+	maxx = maxy = Integer.MIN_VALUE;
+	cells.forEach(gob -> {
+		int x = (int)(gob.gridcell >> 32), y = (int)gob.gridcell;
+		minx = Math.min(minx, x); maxx = Math.max(maxx, x);
+		miny = Math.min(miny, y); maxy = Math.max(maxy, y);
+	    });
+	rebound = false;
+    }
+
+    void add(Gob gob) {
+	gob.gridded = true;
+	place(gob, key(gob.rc));
+    }
+
+    void remove(Gob gob) {
+	if(!gob.gridded)
+	    return;
+	unplace(gob);
+	gob.gridded = false;
+	gob.gridcell = NOWHERE;
+    }
+
+    void moved(Gob gob) {
+	if(!gob.gridded)
+	    return;
+	long k = key(gob.rc);
+	if(k == gob.gridcell)
+	    return;
+	unplace(gob);
+	place(gob, k);
+    }
+
+    private static double dist2(Coord2d a, Coord2d b) {
+	double dx = a.x - b.x, dy = a.y - b.y;
+	return((dx * dx) + (dy * dy));
+    }
+
+    private void scan(int x1, int y1, int x2, int y2, Consumer<Gob> dst) {
+	rebound();
+	x1 = Math.max(x1, minx); y1 = Math.max(y1, miny);
+	x2 = Math.min(x2, maxx); y2 = Math.min(y2, maxy);
+	for(int y = y1; y <= y2; y++) {
+	    for(int x = x1; x <= x2; x++) {
+		for(Gob gob : cells.getall(key(x, y)))
+		    dst.accept(gob);
+	    }
+	}
+    }
+
+    public List<Gob> within(Coord2d c, double r) {
+	List<Gob> ret = new ArrayList<>();
+	double r2 = r * r;
+	scan(cell(c.x - r), cell(c.y - r), cell(c.x + r), cell(c.y + r), gob -> {
+		if(dist2(gob.rc, c) <= r2)
+		    ret.add(gob);
+	    });
+	return(ret);
+    }
+
+    /* The area is given in tile coordinates. */
+    public List<Gob> inArea(Area a) {
+	List<Gob> ret = new ArrayList<>();
+	Coord2d ul = a.ul.mul(MCache.tilesz), br = a.br.mul(MCache.tilesz);
+	scan(cell(ul.x), cell(ul.y), cell(br.x), cell(br.y), gob -> {
+		if(a.contains(gob.rc.floor(MCache.tilesz)))
+		    ret.add(gob);
+	    });
+	return(ret);
+    }
+
+    /* Searches outwards from the given point in rings of cells, up
+     * to the given radius, stopping once no unsearched cell can hold
+     * anything closer than the best match found so far. */
+    public Gob nearest(Coord2d c, double r, Predicate<? super Gob> test) {
+	if(cells.size() == 0)
+	    return(null);
+	rebound();
+	int cx = cell(c.x), cy = cell(c.y);
+	int maxr = Math.max(Math.max(Math.abs(cx - minx), Math.abs(maxx - cx)),
+			    Math.max(Math.abs(cy - miny), Math.abs(maxy - cy)));
+	if(r < maxr * CELL)
+	    maxr = (int)Math.ceil(r / CELL);
+	Gob[] best = {null};
+	double[] bestd = {r * r};
+	Consumer<Gob> check = gob -> {
+	    double d = dist2(gob.rc, c);
+	    if(((best[0] == null) ? (d <= bestd[0]) : (d < bestd[0])) && test.test(gob)) {
+		best[0] = gob;
+		bestd[0] = d;
+	    }
+	};
+	for(int n = 0; n <= maxr; n++) {
+	    if(n == 0) {
+		scan(cx, cy, cx, cy, check);
+	    } else {
+		scan(cx - n, cy - n, cx + n, cy - n, check);
+		scan(cx - n, cy + n, cx + n, cy + n, check);
+		scan(cx - n, cy - n + 1, cx - n, cy + n - 1, check);
+		scan(cx + n, cy - n + 1, cx + n, cy + n - 1, check);
+	    }
+	    /* Anything in ring n + 1 is at least n * CELL away. */
+	    double reach = n * CELL;
+	    if((best[0] != null) && (bestd[0] <= reach * reach))
+		break;
+	}
+	return(best[0]);
+    }
+}
@@ -1,8 +1,11 @@
 package haven;
 
+import haven.render.ColorTex;
 import haven.render.Homo3D;
+import haven.render.Model;
 import haven.render.Pipe;
 import haven.render.RenderTree;
+import java.util.Arrays;
 
 public abstract class GobInfo extends GAttrib implements RenderTree.Node, PView.Render2D {
     protected Tex tex;
@@ -10,6 +13,7 @@ public abstract class GobInfo extends GAttrib implements RenderTree.Node, PView.
     protected final Object texLock = new Object();
     protected Pair<Double, Double> center = new Pair<>(0.5, 0.5);
     protected boolean dirty = true;
+    private LabelAtlas.Entry entry = null;
     
     public GobInfo(Gob owner) {
 	super(owner);
@@ -24,6 +28,7 @@ public abstract class GobInfo extends GAttrib implements RenderTree.Node, PView.
 	synchronized (texLock) {
 	    if(enabled() && (dirty || tex == null)) {
 		if(tex != null) {tex.dispose();}
+		unplace();
 		tex = render();
 		dirty = false;
 	    }
@@ -45,8 +50,18 @@ public abstract class GobInfo extends GAttrib implements RenderTree.Node, PView.
     
     protected abstract Tex render();
 
+    public PView.Batch2D batch() {return(labels);}
+
+    private void unplace() {
+	if(entry != null) {
+	    Labels.atlas.remove(entry);
+	    entry = null;
+	}
+    }
+
     public void clean() {
         synchronized(texLock) {
+	    unplace();
 	    if(tex != null) {
 		tex.dispose();
 		tex = null;
@@ -59,4 +74,94 @@ public abstract class GobInfo extends GAttrib implements RenderTree.Node, PView.
     public void dispose() {
 	clean();
     }
+
+    private static final Labels labels = new Labels();
+
+    /* Draws the labels of all gobs in a view together, from a shared
+     * atlas, projecting their positions in one go. Labels that do
+     * not fit in the atlas are drawn by themselves. */
+    public static class Labels implements PView.Batch2D {
+	public static final LabelAtlas atlas = new LabelAtlas(Tex.nextp2(UI.scale(1024)));
+	private GobInfo[] infos = new GobInfo[64];
+	private Pipe[] states = new Pipe[64];
+	private Coord3f[] pos = new Coord3f[64];
+	private Coord[] sc = new Coord[64];
+	private float[] data = new float[64 * 6 * 4];
+	private int n = 0;
+
+	public void add(PView.Render2D obj, Pipe state) {
+	    if(n >= infos.length) {
+		int nl = infos.length * 2;
+		infos = Arrays.copyOf(infos, nl);
+		states = Arrays.copyOf(states, nl);
+		pos = Arrays.copyOf(pos, nl);
+		sc = Arrays.copyOf(sc, nl);
+	    }
+	    GobInfo info = (GobInfo)obj;
+	    infos[n] = info;
+	    states[n] = state;
+	    pos[n] = info.pos;
+	    n++;
+	}
+
+	private int quad(GOut g, int o, LabelAtlas.Entry e, Coord ul) {
+	    int x1 = ul.x + g.tx.x, y1 = ul.y + g.tx.y, x2 = x1 + e.sz.x, y2 = y1 + e.sz.y;
+	    if((x1 >= g.br.x) || (y1 >= g.br.y) || (x2 <= g.ul.x) || (y2 <= g.ul.y))
+		return(o);
+	    Coord tc = e.ul();
+	    int tx1 = tc.x, ty1 = tc.y;
+	    if(x1 < g.ul.x) {tx1 += g.ul.x - x1; x1 = g.ul.x;}
+	    if(y1 < g.ul.y) {ty1 += g.ul.y - y1; y1 = g.ul.y;}
+	    if(x2 > g.br.x) x2 = g.br.x;
+	    if(y2 > g.br.y) y2 = g.br.y;
+	    float id = 1.0f / atlas.dim;
+	    float u1 = tx1 * id, v1 = ty1 * id, u2 = (tx1 + (x2 - x1)) * id, v2 = (ty1 + (y2 - y1)) * id;
+	    if(o + 24 > data.length)
+		data = Arrays.copyOf(data, data.length * 2);
+	    float[] d = data;
+	    d[o++] = x1; d[o++] = y1; d[o++] = u1; d[o++] = v1;
+	    d[o++] = x1; d[o++] = y2; d[o++] = u1; d[o++] = v2;
+	    d[o++] = x2; d[o++] = y1; d[o++] = u2; d[o++] = v1;
+	    d[o++] = x1; d[o++] = y2; d[o++] = u1; d[o++] = v2;
+	    d[o++] = x2; d[o++] = y2; d[o++] = u2; d[o++] = v2;
+	    d[o++] = x2; d[o++] = y1; d[o++] = u2; d[o++] = v1;
+	    return(o);
+	}
+
+	public void draw(GOut g) {
+	    Coord gsz = g.sz();
+	    Homo3D.obj2sc(pos, states, n, Area.sized(gsz), sc);
+	    atlas.frame();
+	    int o = 0;
+	    for(int i = 0; i < n; i++) {
+		GobInfo info = infos[i];
+		Coord c = sc[i];
+		if((c == null) || !c.isect(Coord.z, gsz))
+		    continue;
+		synchronized(info.texLock) {
+		    Tex tex = info.tex;
+		    if(!info.enabled() || (tex == null))
+			continue;
+		    if((info.entry == null) && (tex instanceof TexI))
+			info.entry = atlas.add(((TexI)tex).back);
+		    if((info.entry == null) || !atlas.place(info.entry)) {
+			g.aimage(tex, c, info.center.a, info.center.b);
+			continue;
+		    }
+		    Coord sz = info.entry.sz;
+		    o = quad(g, o, info.entry, c.add((int)((double)sz.x * -info.center.a), (int)((double)sz.y * -info.center.b)));
+		}
+	    }
+	    if(o > 0) {
+		atlas.upload(g.out);
+		g.usestate(atlas.st);
+		g.drawt(Model.Mode.TRIANGLES, data, o / 4);
+		g.usestate(ColorTex.slot);
+	    }
+	    Arrays.fill(infos, 0, n, null);
+	    Arrays.fill(states, 0, n, null);
+	    Arrays.fill(pos, 0, n, null);
+	    n = 0;
+	}
+    }
 }
@@ -179,103 +179,172 @@ public enum GobTag {
     private static final boolean DBG = false;
     private static final Set<String> UNKNOWN = new HashSet<>();
     
-    public static Set<GobTag> tags(Gob gob) {
-        Set<GobTag> tags = new HashSet<>();
+    /** Resources whose tags depend on more than their name */
+    private enum Kind {PLAIN, PLAYER, DFRAME, TTUB, STACK_FURNACE, ORE_SMELTER, BEEHIVE}
+    
+    /** The part of the tags that only depends on the resource name, computed once per name */
+    private static class Rules {
+        final EnumSet<GobTag> tags = EnumSet.noneOf(GobTag.class);
+        Kind kind = Kind.PLAIN;
+        boolean bat, canAggro;
+    }
+    
+    private static final Map<String, Rules> RULES = new java.util.concurrent.ConcurrentHashMap<>();
+    
+    private static Rules rules(String name) {
+        return RULES.computeIfAbsent(name, GobTag::classify);
+    }
+    
+    private static Rules classify(String name) {
+        Rules rules = new Rules();
+        Set<GobTag> tags = rules.tags;
+        if(name.startsWith("gfx/terobjs/trees")) {
+            if(name.endsWith("log") || name.endsWith("oldtrunk") || name.contains("/driftwood")) {
+                tags.add(LOG);
+            } else if(name.contains("stump")) {
+                tags.add(STUMP);
+            } else {
+                tags.add(TREE);
+            }
+        } else if(name.startsWith("gfx/terobjs/bushes")) {
+            tags.add(BUSH);
+        } else if(name.startsWith("gfx/terobjs/herbs/") || ofType(name, LIKE_HERB)) {
+            tags.add(HERB);
+        } else if(name.startsWith("gfx/borka/body")) {
+            tags.add(PLAYER);
+            rules.kind = Kind.PLAYER;
+        } else if(name.startsWith("gfx/kritter/") || ofType(name, LIKE_CRITTER)) {
+            if(name.contains("/rabbit")) {
+                tags.add(RABBIT);
+            }
+            if(name.endsWith("/midgeswarm")) {
+                tags.add(MIDGES);
+            } else if(ofType(name, CRITTERS)) {
+                tags.add(ANIMAL);
+                tags.add(CRITTER);
+            } else if(ofType(name, BIG_PARTS)) {
+                //ignore big parts of animals like Orca
+            } else if(ofType(name, AGGRO)) {
+                tags.add(ANIMAL);
+                tags.add(AGGRESSIVE);
+            } else if(ofType(name, ANIMALS)) {
+                tags.add(ANIMAL);
+            } else if(domesticated(name, tags)) {
+                tags.add(ANIMAL);
+                tags.add(DOMESTIC);
+                if(name.contains("-fleece")) {tags.add(FLEECE);}
+            } else if(DBG && UNKNOWN.add(name)) {
+                System.out.println(name);
+            }
+            rules.bat = name.contains("/bat");
+        } else if(name.startsWith("gfx/terobjs/arch/") && name.endsWith("gate")) {
+            tags.add(GATE);
+        } else if(name.endsWith("/dframe")) {
+            tags.add(CONTAINER);
+            tags.add(PROGRESSING);
+            rules.kind = Kind.DFRAME;
+        } else if(name.endsWith("/ttub")) {
+            tags.add(CONTAINER);
+            tags.add(PROGRESSING);
+            rules.kind = Kind.TTUB;
+        } else if(name.equals(ResName.STACK_FURNACE)) {
+            tags.add(PROGRESSING);
+            tags.add(SMELTER);
+            rules.kind = Kind.STACK_FURNACE;
+        } else if(name.equals(ResName.ORE_SMELTER)) {
+            tags.add(PROGRESSING);
+            tags.add(SMELTER);
+            rules.kind = Kind.ORE_SMELTER;
+        } else if(name.equals(ResName.FINERY_FORGE)) {
+            tags.add(PROGRESSING);
+            tags.add(SMELTER);
+            //TODO: read sdt flags
+            boolean lit = true;
+            if(lit) {tags.add(LIT);}
+        } else if(name.endsWith("/beehive")) {
+            tags.add(PROGRESSING);
+            rules.kind = Kind.BEEHIVE;
+        } else if(name.endsWith("/gems/gemstone")) {
+            tags.add(GEM);
+        } else if(name.endsWith("/wheelbarrow") || name.endsWith("/plow")) {
+            tags.add(PUSHED);
+        }
+        if(ofType(name, VEHICLES)) {
+            tags.add(VEHICLE);
+        }
+        if(name.equals("gfx/terobjs/items/arrow")) {
+            tags.add(ARROW);
+        }
+        if(name.equals("gfx/terobjs/boostspeed")) {
+            tags.add(SPEED);
+        }
+        
+        if(anyOf(tags, HERB, CRITTER, GEM, ARROW)) {
+            tags.add(PICKUP);
+        }
+        
+        if(anyOf(tags, DOMESTIC, HERB, TREE, BUSH)) {
+            tags.add(MENU);
+        }
+        rules.canAggro = ofType(name, CAN_AGGRO);
+        return rules;
+    }
+    
+    public static EnumSet<GobTag> tags(Gob gob) {
+        EnumSet<GobTag> tags = EnumSet.noneOf(GobTag.class);
+        String name = gob.resid();
+        if(name == null) {return tags;}
+        
+        Rules rules = rules(name);
+        tags.addAll(rules.tags);
         GameUI gui = gob.context(GameUI.class);
         Glob glob = gob.context(Glob.class);
         Equipory equipory = gui != null ? gui.equipory : null;
         Fightview fight = gui != null ? gui.fv : null;
-        
-        String name = gob.resid();
         int sdt = gob.sdt();
-        if(name != null) {
-            List<String> ols = Collections.emptyList();
-            synchronized (gob.ols) {
-                try {
-                    List<String> list = new ArrayList<>();
-                    for (Gob.Overlay overlay : gob.ols) {
-                        if(overlay != null && overlay.spr != null && overlay.spr.res != null) {
-                            list.add(overlay.spr.res.name);
-                        }
-                    }
-                    ols = list;
-                } catch (Loading e) {
-                    gob.tagsUpdated();
-                }
-            }
-    
-            if(name.startsWith("gfx/terobjs/trees")) {
-                if(name.endsWith("log") || name.endsWith("oldtrunk") || name.contains("/driftwood")) {
-                    tags.add(LOG);
-                } else if(name.contains("stump")) {
-                    tags.add(STUMP);
-                } else {
-                    tags.add(TREE);
-                }
-            } else if(name.startsWith("gfx/terobjs/bushes")) {
-                tags.add(BUSH);
-            } else if(name.startsWith("gfx/terobjs/herbs/") || ofType(name, LIKE_HERB)) {
-                tags.add(HERB);
-            } else if(name.startsWith("gfx/borka/body")) {
-                tags.add(PLAYER);
+        
+        switch (rules.kind) {
+            case PLAYER: {
                 Boolean me = gob.isMe();
                 if(me != null) {
                     if(me) {
                         tags.add(ME);
                     } else {
-			tags.add(KinInfo.isFoe(gob) ? FOE : FRIEND);
+                        tags.add(KinInfo.isFoe(gob) ? FOE : FRIEND);
                     }
                 }
-            } else if(name.startsWith("gfx/kritter/") || ofType(name, LIKE_CRITTER)) {
-                if(name.contains("/rabbit")) {
-                    tags.add(RABBIT);
-                }
-                if(name.endsWith("/midgeswarm")) {
-                    tags.add(MIDGES);
-                } else if(ofType(name, CRITTERS)) {
-                    tags.add(ANIMAL);
-                    tags.add(CRITTER);
-                } else if(ofType(name, BIG_PARTS)) {
-                    //ignore big parts of animals like Orca
-                } else if(ofType(name, AGGRO)) {
-                    tags.add(ANIMAL);
-                    tags.add(AGGRESSIVE);
-                } else if(ofType(name, ANIMALS)) {
-                    tags.add(ANIMAL);
-                } else if(domesticated(gob, name, tags)) {
-                    tags.add(ANIMAL);
-                    tags.add(DOMESTIC);
-                    if(name.contains("-fleece")) {tags.add(FLEECE);}
-                } else if(DBG && !UNKNOWN.contains(name)) {
-                    UNKNOWN.add(name);
-                    gob.glob.sess.ui.message(name, GameUI.MsgType.ERROR);
-                    System.out.println(name);
-                }
-                if(name.contains("/bat")) {
-                    if(equipory == null || !equipory.hasBatCape()) {
-                        tags.add(AGGRESSIVE);
+                break;
+            }
+            case DFRAME: {
+                List<String> ols = Collections.emptyList();
+                synchronized (gob.ols) {
+                    try {
+                        List<String> list = new ArrayList<>();
+                        for (Gob.Overlay overlay : gob.ols) {
+                            if(overlay != null && overlay.spr != null && overlay.spr.res != null) {
+                                list.add(overlay.spr.res.name);
+                            }
+                        }
+                        ols = list;
+                    } catch (Loading e) {
+                        gob.tagsUpdated();
                     }
                 }
-            } else if(name.startsWith("gfx/terobjs/arch/") && name.endsWith("gate")) {
-                tags.add(GATE);
-            } else if(name.endsWith("/dframe")) {
-                tags.add(CONTAINER);
-                tags.add(PROGRESSING);
                 boolean empty = ols.isEmpty();
                 boolean done = !empty && ols.stream().noneMatch(GobTag::isDrying);
                 if(empty) { tags.add(EMPTY); }
                 if(done) { tags.add(READY); }
-            } else if(name.endsWith("/ttub")) {
-                tags.add(CONTAINER);
-                tags.add(PROGRESSING);
+                break;
+            }
+            case TTUB: {
                 //sdt bits: 0 - water, 1 - tannin, 2 - hide, 3 - leather
                 boolean empty = (sdt & 0b1100) == 0; //has no hide nor leather
                 boolean done = (sdt & 0b1000) != 0; //has leather
                 if(empty) { tags.add(EMPTY); }
                 if(done) { tags.add(READY); }
-            } else if(name.equals(ResName.STACK_FURNACE)) {
-                tags.add(PROGRESSING);
-                tags.add(SMELTER);
+                break;
+            }
+            case STACK_FURNACE: {
                 //sdt bits: 0 - lit, 1 - ore, 2 - bars, 3 - partial heat or pumping, 4 - full heat
                 boolean lit = (sdt & 0b0001) != 0;
                 boolean ore = (sdt & 0b0000_0010) != 0;
@@ -287,106 +356,87 @@ public enum GobTag {
                     tags.add(LIT);
                     if(!hot && ore) {tags.add(COLD);}
                 }
-            } else if(name.equals(ResName.ORE_SMELTER)) {
-                tags.add(PROGRESSING);
-                tags.add(SMELTER);
+                break;
+            }
+            case ORE_SMELTER: {
                 //sdt bits: 0 - open; 1 - lit; 2 - melting ore; 3,4,5 - bars; 6 - closed
                 boolean lit = (sdt & 0b0010) != 0;
                 boolean bars = (sdt & 0b0011_1000) != 0;
                 if(bars) {tags.add(READY);}
                 if(lit) {tags.add(LIT);}
-            } else if(name.equals(ResName.FINERY_FORGE)) {
-                tags.add(PROGRESSING);
-                tags.add(SMELTER);
-                //TODO: read sdt flags
-                boolean lit = true;
-                if(lit) {tags.add(LIT);}
-            } else if(name.endsWith("/beehive")) {
-                tags.add(PROGRESSING);
+                break;
+            }
+            case BEEHIVE: {
                 //sdt bits: 0 - honey, 1 - bees?, 2 - wax
                 //boolean noHoney = (sdt & 1) == 0; //has no honey
                 boolean hasWax = (sdt & 4) != 0; //has wax
                 if(hasWax) {tags.add(READY);}
-            } else if(name.endsWith("/gems/gemstone")) {
-                tags.add(GEM);
-            } else if(name.endsWith("/wheelbarrow") || name.endsWith("/plow")) {
-                tags.add(PUSHED);
-            }
-            if(ofType(name, VEHICLES)) {
-                tags.add(VEHICLE);
+                break;
             }
-            if(name.equals("gfx/terobjs/items/arrow")) {
-                tags.add(ARROW);
-            }
-            if(name.equals("gfx/terobjs/boostspeed")) {
-                tags.add(SPEED);
-            }
-            
-            if(ItemData.WATER.equalsIgnoreCase(gob.contents())) {
-                tags.add(HAS_WATER);
-            }
-            
-            if(anyOf(tags, HERB, CRITTER, GEM, ARROW)) {
-                tags.add(PICKUP);
+            default:
+                break;
+        }
+        if(rules.bat) {
+            if(equipory == null || !equipory.hasBatCape()) {
+                tags.add(AGGRESSIVE);
             }
-            
-            if(anyOf(tags, DOMESTIC, HERB, TREE, BUSH)) {
-                tags.add(MENU);
+        }
+        
+        if(ItemData.WATER.equalsIgnoreCase(gob.contents())) {
+            tags.add(HAS_WATER);
+        }
+        
+        Party.Member member = glob.party.memb.get(gob.id);
+        if(member != null) {
+            tags.add(PARTY);
+        }
+        
+        Party.Member leader = glob.party.leader;
+        if(leader != null && leader.gobid == gob.id) {
+            tags.add(LEADER);
+        }
+        
+        if(fight != null) {
+            for (Fightview.Relation relation : fight.lsrel) {
+                if(relation.gobid == gob.id) {
+                    tags.add(IN_COMBAT);
+                    break;
+                }
             }
-            
-            Party.Member member = glob.party.memb.get(gob.id);
-            if(member != null) {
-                tags.add(PARTY);
+            Fightview.Relation current = fight.current;
+            if(current != null && current.gobid == gob.id) {
+                tags.add(COMBAT_TARGET);
             }
-            
-            Party.Member leader = glob.party.leader;
-            if(leader != null && leader.gobid == gob.id) {
-                tags.add(LEADER);
+        }
+        
+        boolean isPlayer = tags.contains(PLAYER);
+        boolean invalid = anyOf(tags, ME, PARTY, IN_COMBAT, KO, DEAD);
+        if((isPlayer || rules.canAggro) && !invalid) {
+            tags.add(AGGRO_TARGET);
+        }
+        
+        ContainerInfo.get(name).ifPresent(container -> {
+            tags.add(CONTAINER);
+            if(container.isFull(sdt)) {
+                tags.add(FULL);
+            } else if(container.isEmpty(sdt)) {
+                tags.add(EMPTY);
             }
-            
-            if(fight != null) {
-                for (Fightview.Relation relation : fight.lsrel) {
-                    if(relation.gobid == gob.id) {
-                        tags.add(IN_COMBAT);
-                        break;
-                    }
-                }
-                Fightview.Relation current = fight.current;
-                if(current != null && current.gobid == gob.id) {
-                    tags.add(COMBAT_TARGET);
-                }
+        });
+        
+        Drawable d = gob.drawable;
+        if(d != null) {
+            if(d.hasPose("/knock")) {
+                tags.add(KO);
             }
-
-            boolean isPlayer = anyOf(tags, PLAYER);
-            boolean canAggro = ofType(name, CAN_AGGRO);
-            boolean invalid = anyOf(tags, ME, PARTY, IN_COMBAT, KO, DEAD);
-            if((isPlayer || canAggro) && !invalid) {
-                tags.add(AGGRO_TARGET);
+            if(d.hasPose("/dead") || d.hasPose("/waterdead")) {
+                tags.add(DEAD);
             }
-    
-            ContainerInfo.get(name).ifPresent(container -> {
-                tags.add(CONTAINER);
-                if(container.isFull(sdt)) {
-                    tags.add(FULL);
-                } else if(container.isEmpty(sdt)) {
-                    tags.add(EMPTY);
-                }
-            });
-    
-            Drawable d = gob.drawable;
-            if(d != null) {
-                if(d.hasPose("/knock")) {
-                    tags.add(KO);
-                }
-                if(d.hasPose("/dead") || d.hasPose("/waterdead")) {
-                    tags.add(DEAD);
-                }
-                if(d.hasPose("drinkan")) {
-                    tags.add(DRINKING);
-                }
+            if(d.hasPose("drinkan")) {
+                tags.add(DRINKING);
             }
         }
-    
+        
         return tags;
     }
     
@@ -402,7 +452,7 @@ public enum GobTag {
         return false;
     }
     
-    private static boolean domesticated(Gob gob, String name, Set<GobTag> tags) {
+    private static boolean domesticated(String name, Set<GobTag> tags) {
         if(name.contains("/cattle/") && !name.contains("/aurochs")) {
             tags.add(CATTLE);
             if(name.contains("/cattle/bull")) {
@@ -32,6 +32,10 @@ public class GobWarning extends GAttrib implements RenderTree.Node {
 	if(radius != null && WarnCFG.get(tgt, highlight)) {slot.add(radius);}
     }
     
+    public float radius() {
+	return((tgt != null) ? tgt.radius : 0);
+    }
+    
     public static boolean needsWarning(Gob gob) {
 	return categorize(gob) != null;
     }
@@ -0,0 +1,214 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+
+package haven;
+
+import java.util.*;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.nio.ByteBuffer;
+import haven.render.*;
+
+/*
+ * A shared texture for many small, individually changing images,
+ * such as overhead labels, so that they can all be drawn with a
+ * single texture binding. Images are packed onto shelves of similar
+ * height. Space freed by removed images is only reclaimed once a
+ * shelf empties, so when the atlas is full, the least recently used
+ * shelf is evicted as a whole, and the images on it have to be
+ * placed again the next time they are drawn.
+ */
+public class LabelAtlas {
+    public static int evictions = 0;
+    public final int dim;
+    private final Texture2D tex;
+    public final ColorTex st;
+    private final List<Shelf> shelves = new ArrayList<>();
+    private BufferedImage back;
+    private Graphics2D bg;
+    private int top = 0, frame = 0;
+    /* The band of rows changed since the last upload. */
+    private int dirty0 = 0, dirty1 = 0;
+
+    private static class Shelf {
+	final int y, h;
+	final List<Entry> entries = new ArrayList<>();
+	int x = 0, lastuse = -1;
+
+	Shelf(int y, int h) {
+	    this.y = y;
+	    this.h = h;
+	}
+    }
+
+    public class Entry {
+	public final BufferedImage img;
+	public final Coord sz;
+	private Shelf shelf = null;
+	private int x;
+
+	private Entry(BufferedImage img) {
+	    this.img = img;
+	    this.sz = Utils.imgsz(img);
+	}
+
+	public Coord ul() {
+	    return(Coord.of(x, shelf.y));
+	}
+    }
+
+    public LabelAtlas(int dim) {
+	this.dim = dim;
+	this.back = TexI.mkbuf(Coord.of(dim, dim));
+	this.bg = back.createGraphics();
+	bg.setComposite(AlphaComposite.Src);
+	this.tex = new Texture2D(dim, dim, DataBuffer.Usage.STATIC, new VectorFormat(4, NumberFormat.UNORM8), this::fill);
+	Texture2D.Sampler2D data = new Texture2D.Sampler2D(tex);
+	data.magfilter(Texture.Filter.NEAREST).minfilter(Texture.Filter.NEAREST);
+	this.st = new ColorTex(data);
+    }
+
+    private byte[] data() {
+	return(((DataBufferByte)back.getRaster().getDataBuffer()).getData());
+    }
+
+    private FillBuffer fill(Texture.Image<?> img, Environment env) {
+	FillBuffer buf = env.fillbuf(img);
+	buf.pull(ByteBuffer.wrap(data()));
+	return(buf);
+    }
+
+    public Entry add(BufferedImage img) {
+	return(new Entry(img));
+    }
+
+    private static int shelfh(int h) {
+	return((h + 7) & ~7);
+    }
+
+    private void evict(Shelf s) {
+	for(Entry e : s.entries)
+	    e.shelf = null;
+	s.entries.clear();
+	s.x = 0;
+	evictions++;
+    }
+
+    private Shelf find(int w, int h) {
+	int sh = shelfh(h);
+	for(Shelf s : shelves) {
+	    if((s.h == sh) && (s.x + w <= dim))
+		return(s);
+	}
+	if(top + sh <= dim) {
+	    Shelf s = new Shelf(top, sh);
+	    top += sh + 1;
+	    shelves.add(s);
+	    return(s);
+	}
+	Shelf lru = null;
+	for(Shelf s : shelves) {
+	    if((s.h < h) || (s.h > sh * 2) || (s.lastuse >= frame))
+		continue;
+	    if(s.entries.isEmpty())
+		return(s);
+	    if((lru == null) || (s.lastuse < lru.lastuse))
+		lru = s;
+	}
+	if(lru != null)
+	    evict(lru);
+	return(lru);
+    }
+
+    /* Makes sure that the entry is in the atlas and marks it as used
+     * in this frame. Returns false if there is no room for it. */
+    public synchronized boolean place(Entry e) {
+	if(e.shelf != null) {
+	    e.shelf.lastuse = frame;
+	    return(true);
+	}
+	if((e.sz.x > dim) || (e.sz.y > dim))
+	    return(false);
+	Shelf s = find(e.sz.x, e.sz.y);
+	if(s == null)
+	    return(false);
+	e.shelf = s;
+	e.x = s.x;
+	s.x += e.sz.x + 1;
+	s.entries.add(e);
+	s.lastuse = frame;
+	bg.drawImage(e.img, e.x, s.y, null);
+	if(dirty0 == dirty1) {
+	    dirty0 = s.y;
+	    dirty1 = s.y + e.sz.y;
+	} else {
+	    dirty0 = Math.min(dirty0, s.y);
+	    dirty1 = Math.max(dirty1, s.y + e.sz.y);
+	}
+	return(true);
+    }
+
+    public synchronized void remove(Entry e) {
+	Shelf s = e.shelf;
+	if(s != null) {
+	    s.entries.remove(e);
+	    if(s.entries.isEmpty())
+		s.x = 0;
+	    e.shelf = null;
+	}
+    }
+
+    public synchronized void frame() {
+	frame++;
+    }
+
+    /* Uploads only the rows that images have been placed on since
+     * the last upload, which with many changing labels are mostly
+     * those of a few shelves. */
+    public void upload(Render out) {
+	byte[] data;
+	int from, to;
+	synchronized(this) {
+	    if(dirty0 == dirty1)
+		return;
+	    int rowsz = dim * 4;
+	    from = dirty0 * rowsz;
+	    to = dirty1 * rowsz;
+	    dirty0 = dirty1 = 0;
+	    /* The upload happens later, by which time the next frame
+	     * may already be placing new images. */
+	    data = Arrays.copyOfRange(data(), from, to);
+	}
+	out.update(tex.image(0), (DataBuffer.PartFiller<Texture.Image<?>>)(img, env, f, t) -> {
+		FillBuffer buf = env.fillbuf(img, f, t);
+		buf.pull(ByteBuffer.wrap(data));
+		return(buf);
+	    }, from, to);
+    }
+}
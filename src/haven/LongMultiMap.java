@@ -0,0 +1,267 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven;
+
+import java.util.*;
+import java.util.function.*;
+
+/*
+ * Like HashMultiMap, but keyed on primitive longs in an
+ * open-addressed, linearly probed table, so that lookups neither box
+ * their keys nor chase entry chains. The table is kept at most half
+ * full, since lookups of absent keys are common.
+ */
+public class LongMultiMap<V> {
+    private long[] keys;
+    private Object[] vals;
+    private int used = 0, size = 0;
+
+    private static class TaggedList<T> extends ArrayList<T> {
+    }
+
+    public LongMultiMap(int cap) {
+	int sz = 16;
+	while(sz < cap * 2)
+	    sz <<= 1;
+	keys = new long[sz];
+	vals = new Object[sz];
+    }
+
+    public LongMultiMap() {
+	this(16);
+    }
+
+    private static int hash(long key) {
+	key ^= key >>> 33;
+	key *= 0xff51afd7ed558ccdL;
+	key ^= key >>> 33;
+	return((int)key);
+    }
+
+    private int slot(long key) {
+	int m = keys.length - 1;
+	for(int i = hash(key) & m; ; i = (i + 1) & m) {
+	    if((keys[i] == key) || (vals[i] == null))
+		return(i);
+	}
+    }
+
+    private void resize(int nsz) {
+	long[] okeys = keys;
+	Object[] ovals = vals;
+	keys = new long[nsz];
+	vals = new Object[nsz];
+	for(int i = 0; i < okeys.length; i++) {
+	    if(ovals[i] != null) {
+		int s = slot(okeys[i]);
+		keys[s] = okeys[i];
+		vals[s] = ovals[i];
+	    }
+	}
+    }
+
+    private void clear(int i) {
+	int m = keys.length - 1;
+	for(int j = (i + 1) & m; vals[j] != null; j = (j + 1) & m) {
+	    int k = hash(keys[j]) & m;
+	    if((i <= j) ? ((i < k) && (k <= j)) : ((i < k) || (k <= j)))
+		continue;
+	    keys[i] = keys[j];
+	    vals[i] = vals[j];
+	    i = j;
+	}
+	vals[i] = null;
+	used--;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void put(long key, V value) {
+	if(value == null)
+	    throw(new NullPointerException("value"));
+	if((used + 1) * 2 > keys.length)
+	    resize(keys.length * 2);
+	int i = slot(key);
+	Object prev = vals[i];
+	if(prev instanceof TaggedList) {
+	    ((TaggedList<V>)prev).add(value);
+	} else if(prev != null) {
+	    TaggedList<V> ls = new TaggedList<>();
+	    ls.add((V)prev);
+	    ls.add(value);
+	    vals[i] = ls;
+	} else {
+	    keys[i] = key;
+	    vals[i] = value;
+	    used++;
+	}
+	size++;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key, V value) {
+	if(value == null)
+	    throw(new NullPointerException("value"));
+	int i = slot(key);
+	Object cur = vals[i];
+	V ret;
+	if(cur instanceof TaggedList) {
+	    TaggedList<V> ls = (TaggedList<V>)cur;
+	    ret = ls.remove(value) ? value : null;
+	    if(ls.size() == 1)
+		vals[i] = ls.get(0);
+	    if(ret != null)
+		size--;
+	} else if(cur != null) {
+	    clear(i);
+	    ret = (V)cur;
+	    size--;
+	} else {
+	    ret = null;
+	}
+	return(ret);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+	Object cur = vals[slot(key)];
+	if(cur instanceof TaggedList)
+	    return(null);
+	return((V)cur);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Collection<V> getall(long key) {
+	Object cur = vals[slot(key)];
+	if(cur instanceof TaggedList) {
+	    return((TaggedList<V>)cur);
+	} else if(cur != null) {
+	    return(Collections.singletonList((V)cur));
+	} else {
+	    return(Collections.emptyList());
+	}
+    }
+
+    public int size() {
+	return(size);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super V> action) {
+	for(Object v : vals) {
+	    if(v instanceof TaggedList) {
+		for(V e : (TaggedList<V>)v)
+		    action.accept(e);
+	    } else if(v != null) {
+		action.accept((V)v);
+	    }
+	}
+    }
+
+    @SuppressWarnings("unchecked")
+    public V[] toArray(V[] buf) {
+	if(buf.length < size)
+	    buf = Arrays.copyOf(buf, size);
+	int n = 0;
+	for(Object v : vals) {
+	    if(v instanceof TaggedList) {
+		for(V e : (TaggedList<V>)v)
+		    buf[n++] = e;
+	    } else if(v != null) {
+		buf[n++] = (V)v;
+	    }
+	}
+	if(n < buf.length)
+	    buf[n] = null;
+	return(buf);
+    }
+
+    private Collection<V> values = null;
+    public Collection<V> values() {
+	if(values == null) {
+	    values = new AbstractCollection<V>() {
+		    public int size() {
+			return(size);
+		    }
+
+		    public void forEach(Consumer<? super V> action) {
+			LongMultiMap.this.forEach(action);
+		    }
+
+		    @SuppressWarnings("unchecked")
+		    public <T> T[] toArray(T[] buf) {
+			return((T[])LongMultiMap.this.toArray((V[])buf));
+		    }
+
+		    /* Removal through the iterator is not supported,
+		     * since deleting from the table moves entries
+		     * around. */
+		    public Iterator<V> iterator() {
+			return(new Iterator<V>() {
+				Object[] vals = LongMultiMap.this.vals;
+				int i = 0;
+				Iterator<V> lsi = null;
+				V next = null;
+
+				@SuppressWarnings("unchecked")
+				public boolean hasNext() {
+				    if(next != null)
+					return(true);
+				    if(lsi != null) {
+					if(lsi.hasNext()) {
+					    next = lsi.next();
+					    return(true);
+					}
+					lsi = null;
+				    }
+				    while(i < vals.length) {
+					Object v = vals[i++];
+					if(v instanceof TaggedList) {
+					    lsi = ((TaggedList<V>)v).iterator();
+					    next = lsi.next();
+					    return(true);
+					} else if(v != null) {
+					    next = (V)v;
+					    return(true);
+					}
+				    }
+				    return(false);
+				}
+
+				public V next() {
+				    if(!hasNext())
+					throw(new NoSuchElementException());
+				    V ret = next;
+				    next = null;
+				    return(ret);
+				}
+			    });
+		    }
+		};
+	}
+	return(values);
+    }
+}
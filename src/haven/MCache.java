@@ -976,6 +976,120 @@ public class MCache implements MapSource {
 	return(cut.getsurf(id, t).getnorm(pc));
     }
 
+    /*
+     * Samples the map for callers that query many points close to
+     * each other, like gob placers and terrain-following overlays.
+     * The last grid, cut and surface are kept between queries, so
+     * that most of them neither go through the grid table nor
+     * allocate coordinates. A sampler keeps per-query state and must
+     * not be shared between threads; sampler() gives each thread its
+     * own.
+     */
+    public class Sampler {
+	private Grid g;
+	private Grid.Cut cut;
+	private MapMesh mesh;
+	private SurfaceID sid;
+	private Tiler stile;
+	private ZSurface surf;
+
+	private Grid grid(int tx, int ty) {
+	    int gx = Utils.floordiv(tx, cmaps.x), gy = Utils.floordiv(ty, cmaps.y);
+	    Grid g = this.g;
+	    if((g == null) || g.removed || (g.gc.x != gx) || (g.gc.y != gy)) {
+		this.g = g = getgrid(Coord.of(gx, gy));
+		this.cut = null;
+	    }
+	    return(g);
+	}
+
+	public int gettile(int tx, int ty) {
+	    Grid g = grid(tx, ty);
+	    return(g.tiles[(tx - g.ul.x) + ((ty - g.ul.y) * cmaps.x)]);
+	}
+
+	public double getfz(int tx, int ty) {
+	    if(CFG.FLAT_TERRAIN.get())
+		return(0);
+	    Grid g = grid(tx, ty);
+	    return(g.z[(tx - g.ul.x) + ((ty - g.ul.y) * cmaps.x)]);
+	}
+
+	/* Same as MCache.getcz() */
+	public double getcz(double px, double py) {
+	    double tw = tilesz.x, th = tilesz.y;
+	    int ux = Utils.floordiv(px, tw), uy = Utils.floordiv(py, th);
+	    double sx = (px - (ux * tw)) / tw;
+	    double sy = (py - (uy * th)) / th;
+	    return(((1.0f - sy) * (((1.0f - sx) * getfz(ux, uy)) + (sx * getfz(ux + 1, uy)))) +
+		   (sy * (((1.0f - sx) * getfz(ux, uy + 1)) + (sx * getfz(ux + 1, uy + 1)))));
+	}
+
+	public void getcz(double[] xs, double[] ys, double[] out) {
+	    for(int i = 0; i < out.length; i++)
+		out[i] = getcz(xs[i], ys[i]);
+	}
+
+	private ZSurface surf(SurfaceID id, int tx, int ty) {
+	    Grid g = grid(tx, ty);
+	    int lx = tx - g.ul.x, ly = ty - g.ul.y;
+	    Grid.Cut cut = g.cuts[(lx / cutsz.x) + ((ly / cutsz.y) * cutn.x)];
+	    MapMesh mesh = cut.mesh.get();
+	    Tiler t = tiler(g.tiles[lx + (ly * cmaps.x)]);
+	    if((cut != this.cut) || (mesh != this.mesh) || (id != this.sid) || (t != this.stile)) {
+		this.surf = mesh.getsurf(id, t);
+		this.cut = cut;
+		this.mesh = mesh;
+		this.sid = id;
+		this.stile = t;
+	    }
+	    return(this.surf);
+	}
+
+	/* Same as MCache.getz(SurfaceID, Coord2d) */
+	public double getz(SurfaceID id, double px, double py) {
+	    ZSurface surf = surf(id, Utils.floordiv(px, tilesz.x), Utils.floordiv(py, tilesz.y));
+	    /* The plain terrain surface is by far the most common, and
+	     * interpolates the same way as getcz(). */
+	    if(surf.getClass() == Tiler.MapZSurface.class)
+		return(getcz(px, py));
+	    return(surf.getz(Coord2d.of(px, py)));
+	}
+
+	public void getz(SurfaceID id, double[] xs, double[] ys, double[] out) {
+	    for(int i = 0; i < out.length; i++)
+		out[i] = getz(id, xs[i], ys[i]);
+	}
+
+	public Coord3f getzp(SurfaceID id, double px, double py) {
+	    return(Coord3f.of((float)px, (float)py, (float)getz(id, px, py)));
+	}
+
+	/* Same as MCache.getnorm(SurfaceID, Coord2d) */
+	public Coord3f getnorm(SurfaceID id, double px, double py) {
+	    int ux = Utils.floordiv(px, tilesz.x), uy = Utils.floordiv(py, tilesz.y);
+	    ZSurface surf = surf(id, ux, uy);
+	    if(surf.getClass() != Tiler.MapZSurface.class)
+		return(surf.getnorm(Coord2d.of(px, py)));
+	    double tw = tilesz.x, th = tilesz.y;
+	    double sx = (px - (ux * tw)) / tw, sy = (py - (uy * th)) / th, iy = 1.0 - sy;
+	    double z0 = getfz(ux, uy), z1 = getfz(ux + 1, uy), z2 = getfz(ux + 1, uy + 1), z3 = getfz(ux, uy + 1);
+	    double nx = ((z1 * iy) + (z2 * sy)) - ((z0 * iy) + (z3 * sy));
+	    double ny = ((z3 * iy) + (z2 * sy)) - ((z0 * iy) + (z1 * sy));
+	    return(Coord3f.of((float)tw, 0, (float)nx).cmul(0, (float)th, (float)ny).norm());
+	}
+    }
+
+    /* Held weakly, for the same reason as the cached grid above. */
+    private final ThreadLocal<Reference<Sampler>> samplers = new ThreadLocal<>();
+    public Sampler sampler() {
+	Reference<Sampler> ref = samplers.get();
+	Sampler ret = (ref == null) ? null : ref.get();
+	if(ret == null)
+	    samplers.set(new WeakReference<>(ret = new Sampler()));
+	return(ret);
+    }
+
     public Collection<OverlayInfo> getols(Area a) {
 	Collection<OverlayInfo> ret = new ArrayList<>();
 	for(Coord gc : a.div(cmaps)) {
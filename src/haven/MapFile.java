@@ -28,10 +28,13 @@ package haven;
 
 import java.util.*;
 import java.util.concurrent.locks.*;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.io.*;
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
 import java.awt.image.WritableRaster;
 import haven.render.*;
 import haven.Defer.Future;
@@ -43,11 +46,13 @@ import static me.ender.minimap.AutoMarkers.*;
 
 public class MapFile {
     public static final Config.Variable<java.net.URI> mapbase = Config.Variable.propu("haven.mapbase", "");
+    public static final Config.Variable<Boolean> imgcache = Config.Variable.propb("haven.mapimgcache", true);
     public static boolean debug = false;
     public final ResCache store;
     public final String filename;
     public final Collection<Long> knownsegs = new HashSet<>();
     public final Collection<Marker> markers = new ArrayList<>();
+    public final MarkerIndex markidx = new MarkerIndex();
     public final Map<Long, SMarker> smarkers = new HashMap<>();
     public int markerseq = 0;
     public IDPool markerids = new IDPool(0, Long.MAX_VALUE);
@@ -92,54 +97,359 @@ public class MapFile {
 	warn(null, fmt, args);
     }
 
+    /* Rendered images are stored with the key of the data they were
+     * rendered from, and an image with any other key is a miss. */
+    public BufferedImage loadimg(long key, String ctl, Object... args) {
+	InputStream fp;
+	try {
+	    fp = sfetch(ctl, args);
+	} catch(FileNotFoundException e) {
+	    return(null);
+	} catch(IOException e) {
+	    warn(e, "error when locating image %s: %s", String.format(ctl, args), e);
+	    return(null);
+	}
+	try(StreamMessage data = new StreamMessage(fp)) {
+	    if(data.eom())
+		return(null);
+	    if((data.uint8() != 1) || (data.int64() != key))
+		return(null);
+	    ZMessage z = new ZMessage(data);
+	    WritableRaster buf = PUtils.imgraster(z.coord());
+	    z.bytes(((DataBufferByte)buf.getDataBuffer()).getData());
+	    return(PUtils.rasterimg(buf));
+	} catch(Message.BinError e) {
+	    warn(e, "could not load image %s: %s", String.format(ctl, args), e);
+	    return(null);
+	}
+    }
+
+    public void storeimg(BufferedImage img, long key, String ctl, Object... args) {
+	DataBuffer data = img.getRaster().getDataBuffer();
+	if(!(data instanceof DataBufferByte) || (data.getSize() != img.getWidth() * img.getHeight() * 4))
+	    return;
+	OutputStream fp;
+	try {
+	    fp = sstore(ctl, args);
+	} catch(IOException e) {
+	    warn(e, "error when storing image %s: %s", String.format(ctl, args), e);
+	    return;
+	}
+	try(StreamMessage out = new StreamMessage(fp)) {
+	    out.adduint8(1);
+	    out.addint64(key);
+	    ZMessage z = new ZMessage(out);
+	    z.addcoord(Coord.of(img.getWidth(), img.getHeight()));
+	    z.addbytes(((DataBufferByte)data).getData());
+	    z.finish();
+	}
+    }
+
+    /*
+     * The index and index-ender hold the known segments and markers
+     * as of their last compaction. The index is kept in the format of
+     * the stock client, which shares the map store, and so holds only
+     * the default markers, while the custom ones are in index-ender.
+     * Changes since the compaction are appended to a journal, which
+     * since a ResCache can only replace entries whole, is kept as a
+     * numbered run of small chunks, index-j0, index-j1, and so on,
+     * each tagged with the generation of the index it applies to.
+     * Chunks left over from before a compaction therefore simply end
+     * the run when loading, and get overwritten as new ones are
+     * written. The generation is kept in index-jmeta along with
+     * digests of the index files it applies to, so that the journal
+     * is ignored if the stock client has rewritten the index since.
+     * As the three of them cannot be replaced together, a compaction
+     * first stages all of them in index-next, which is only cleared
+     * once they have been written, and is redone when loading if it
+     * was interrupted.
+     */
+    private static final int J_SEGADD = 1, J_SEGDEL = 2, J_MARKADD = 3, J_MARKUPD = 4, J_MARKDEL = 5;
+    private static final int JOURNAL_CHUNKS = 256;
+    private long igen = 0, nextjid = 1;
+    private int jchunks = 0, jrecs = 0;
+    private MessageBuf jbuf = new MessageBuf();
+
+    private static void saveimark(Message fp, Marker mark) {
+	if(mark instanceof CustomMarker) {
+	    fp.adduint8('c');
+	    savecmarker(fp, mark);
+	} else {
+	    fp.adduint8('m');
+	    savemarker(fp, mark);
+	}
+    }
+
+    private static Marker loadimark(Message fp) {
+	int kind = fp.uint8();
+	switch(kind) {
+	case 'm':
+	    return(loadmarker(fp));
+	case 'c':
+	    return(loadcmarker(fp));
+	default:
+	    throw(new Message.FormatError("Unknown index marker kind: " + kind));
+	}
+    }
+
+    private byte[] sfetchall(String ctl, Object... args) throws IOException {
+	try(InputStream fp = sfetch(ctl, args)) {
+	    return(Utils.readall(fp));
+	}
+    }
+
+    private void sput(byte[] data, String ctl, Object... args) {
+	try(OutputStream fp = sstore(ctl, args)) {
+	    fp.write(data);
+	} catch(IOException e) {
+	    throw(new StreamMessage.IOError(e));
+	}
+    }
+
     public static MapFile load(ResCache store, String filename) throws IOException {
 	MapFile file = new MapFile(store, filename);
-	InputStream fp;
+	file.redo();
+	byte[] index;
 	try {
-	    fp = file.sfetch("index");
+	    index = file.sfetchall("index");
 	} catch(FileNotFoundException e) {
 	    return(file);
 	}
-	try(StreamMessage data = new StreamMessage(fp)) {
+	try {
+	    Message data = new MessageBuf(index);
 	    int ver = data.uint8();
 	    if(ver == 1) {
 		for(int i = 0, no = data.int32(); i < no; i++)
 		    file.knownsegs.add(data.int64());
-		for(int i = 0, no = data.int32(); i < no; i++) {
-		    Marker mark = loadmarker(data);
-		    file.markers.add(mark);
-		    if((mark instanceof SMarker) && (((SMarker)mark).oid != 0))
-			file.smarkers.put(((SMarker)mark).oid, (SMarker)mark);
-		}
+		for(int i = 0, no = data.int32(); i < no; i++)
+		    file.markers.add(loadmarker(data));
+		loadCustomMarkers(file);
+		for(Marker mark : file.markers)
+		    mark.jid = file.nextjid++;
+		file.recover(index);
 	    } else {
 		throw(new IOException(String.format("unknown mapfile index version: %d", ver)));
 	    }
 	} catch(Message.BinError e) {
 	    throw(new IOException(String.format("error when loading index: %s", e), e));
 	}
-	loadCustomMarkers(file);
+	for(Marker mark : file.markers) {
+	    if((mark instanceof SMarker) && (((SMarker)mark).oid != 0))
+		file.smarkers.put(((SMarker)mark).oid, (SMarker)mark);
+	    file.markidx.add(mark);
+	}
 	return(file);
     }
 
-    private void save() {
-	checklock();
-	OutputStream fp;
+    /* Finishes writing the index files of a compaction that was
+     * interrupted after staging them. */
+    private void redo() {
+	byte[] ib, eb, mb;
 	try {
-	    fp = sstore("index");
+	    Message next = new MessageBuf(sfetchall("index-next"));
+	    if(next.eom() || (next.uint8() != 1))
+		return;
+	    mb = next.bytes(next.int32());
+	    ib = next.bytes(next.int32());
+	    eb = next.bytes(next.int32());
+	    Message meta = new MessageBuf(mb);
+	    meta.skip(1 + 8 + 8);
+	    if(!Arrays.equals(meta.bytes(20), Digest.hash(Digest.SHA1, ib)) ||
+	       !Arrays.equals(meta.bytes(20), Digest.hash(Digest.SHA1, eb)))
+		throw(new Message.FormatError("Staged index digest mismatch"));
 	} catch(IOException e) {
-	    throw(new StreamMessage.IOError(e));
+	    return;
+	} catch(Message.BinError e) {
+	    warn(e, "error when loading staged index: %s", e);
+	    sput(new byte[0], "index-next");
+	    return;
+	}
+	sput(ib, "index");
+	sput(eb, "index-ender");
+	sput(mb, "index-jmeta");
+	sput(new byte[0], "index-next");
+    }
+
+    /* Replays the journal if it was started from the index files
+     * just loaded. Otherwise, the index files are taken as they are,
+     * and the next save compacts. */
+    private void recover(byte[] index) {
+	long gen, nid;
+	try {
+	    Message meta = new MessageBuf(sfetchall("index-jmeta"));
+	    if(meta.uint8() != 1)
+		return;
+	    gen = meta.int64();
+	    nid = meta.int64();
+	    byte[] idig = meta.bytes(20), edig = meta.bytes(20);
+	    if(!Arrays.equals(idig, Digest.hash(Digest.SHA1, index)))
+		return;
+	    if(!Arrays.equals(edig, Digest.hash(Digest.SHA1, sfetchall("index-ender"))))
+		return;
+	} catch(IOException e) {
+	    return;
+	} catch(Message.BinError e) {
+	    warn(e, "error when loading index journal state: %s", e);
+	    return;
 	}
-	Collection<Marker> markers = defaultMarkers(this.markers);
-	try(StreamMessage out = new StreamMessage(fp)) {
-	    out.adduint8(1);
-	    out.addint32(knownsegs.size());
+	igen = gen;
+	nextjid = Math.max(nextjid, nid);
+	replay();
+    }
+
+    private void replay() {
+	Map<Long, Marker> byid = new LinkedHashMap<>();
+	for(Marker mark : markers)
+	    byid.put(mark.jid, mark);
+	for(jchunks = 0; ; jchunks++) {
+	    InputStream fp;
+	    try {
+		fp = sfetch("index-j%d", jchunks);
+	    } catch(IOException e) {
+		break;
+	    }
+	    try(StreamMessage data = new StreamMessage(fp)) {
+		if(data.eom() || (data.uint8() != 1) || (data.int64() != igen) || (data.int32() != jchunks))
+		    break;
+		while(!data.eom()) {
+		    int op = data.uint8();
+		    long id = data.int64();
+		    switch(op) {
+		    case J_SEGADD:
+			knownsegs.add(id);
+			break;
+		    case J_SEGDEL:
+			knownsegs.remove(id);
+			break;
+		    case J_MARKADD: case J_MARKUPD:
+			Marker mark = loadimark(data);
+			mark.jid = id;
+			byid.put(id, mark);
+			nextjid = Math.max(nextjid, id + 1);
+			break;
+		    case J_MARKDEL:
+			byid.remove(id);
+			break;
+		    default:
+			throw(new Message.FormatError("Unknown journal record: " + op));
+		    }
+		    jrecs++;
+		}
+	    } catch(Message.BinError e) {
+		/* Most likely torn by a crash while being written. What
+		 * could be read of it has been applied, so have the next
+		 * save compact rather than overwrite it. */
+		warn(e, "error when replaying index journal chunk %d: %s", jchunks, e);
+		jchunks = JOURNAL_CHUNKS;
+		break;
+	    }
+	}
+	markers.clear();
+	markers.addAll(byid.values());
+    }
+
+    private void journal(int op, long id, Marker mark) {
+	synchronized(procmon) {
+	    jbuf.adduint8(op);
+	    jbuf.addint64(id);
+	    if(mark != null)
+		saveimark(jbuf, mark);
+	    jrecs++;
+	    gdirty = true;
+	    process();
+	}
+    }
+
+    /* The index files are encoded from a snapshot taken under the
+     * write lock, which also renumbers the markers in the order they
+     * will be read back in, and are then written without holding
+     * it. Until index-next is cleared, loading redoes the writes
+     * from it, so that the index, index-ender and index-jmeta are
+     * never left mismatched, as a stale journal would otherwise get
+     * dropped or applied to the wrong generation. */
+    private void compact() {
+	MessageBuf index = new MessageBuf(), ender = new MessageBuf(), meta = new MessageBuf();
+	lock.writeLock().lock();
+	try {
+	    Collection<Marker> dmarks = defaultMarkers(markers), cmarks = customMarkers(markers);
+	    long jid = 1;
+	    index.adduint8(1);
+	    index.addint32(knownsegs.size());
 	    for(Long seg : knownsegs)
-		out.addint64(seg);
-	    out.addint32(markers.size());
-	    for(Marker mark : markers)
-		savemarker(out, mark);
+		index.addint64(seg);
+	    index.addint32(dmarks.size());
+	    for(Marker mark : dmarks) {
+		savemarker(index, mark);
+		mark.jid = jid++;
+	    }
+	    saveCustomMarkers(this, ender, cmarks);
+	    for(Marker mark : cmarks)
+		mark.jid = jid++;
+	    synchronized(procmon) {
+		jbuf = new MessageBuf();
+		jrecs = 0;
+	    }
+	    nextjid = jid;
+	    igen++;
+	    jchunks = 0;
+	    meta.adduint8(1);
+	    meta.addint64(igen);
+	    meta.addint64(nextjid);
+	} finally {
+	    lock.writeLock().unlock();
+	}
+	byte[] ib = index.fin(), eb = ender.fin();
+	meta.addbytes(Digest.hash(Digest.SHA1, ib));
+	meta.addbytes(Digest.hash(Digest.SHA1, eb));
+	byte[] mb = meta.fin();
+	MessageBuf next = new MessageBuf();
+	next.adduint8(1);
+	next.addint32(mb.length); next.addbytes(mb);
+	next.addint32(ib.length); next.addbytes(ib);
+	next.addint32(eb.length); next.addbytes(eb);
+	lock.readLock().lock();
+	try {
+	    sput(next.fin(), "index-next");
+	    sput(ib, "index");
+	    sput(eb, "index-ender");
+	    sput(mb, "index-jmeta");
+	    sput(new byte[0], "index-next");
+	} finally {
+	    lock.readLock().unlock();
 	}
-	saveCustomMarkers(this);
+    }
+
+    private void save() {
+	boolean compact;
+	lock.readLock().lock();
+	try {
+	    MessageBuf recs;
+	    synchronized(procmon) {
+		compact = (igen == 0) || (jchunks >= JOURNAL_CHUNKS) || (jrecs > Math.max(1024, markers.size() / 2));
+		recs = compact ? null : jbuf;
+		if(!compact)
+		    jbuf = new MessageBuf();
+	    }
+	    if(!compact && (recs.size() > 0)) {
+		OutputStream fp;
+		try {
+		    fp = sstore("index-j%d", jchunks);
+		} catch(IOException e) {
+		    throw(new StreamMessage.IOError(e));
+		}
+		try(StreamMessage out = new StreamMessage(fp)) {
+		    out.adduint8(1);
+		    out.addint64(igen);
+		    out.addint32(jchunks);
+		    out.addbytes(recs.fin());
+		}
+		jchunks++;
+	    }
+	} finally {
+	    lock.readLock().unlock();
+	}
+	if(compact)
+	    compact();
     }
 
     public void defersave() {
@@ -240,7 +550,7 @@ public class MapFile {
 			    Segment seg = Utils.take(dirty);
 			    task = locked(() -> segments.put(seg.id, seg), lock.writeLock());
 			} else if(gdirty) {
-			    task = locked(MapFile.this::save, lock.readLock());
+			    task = MapFile.this::save;
 			    gdirty = false;
 			} else {
 			    if(now - last > 10000) {
@@ -353,7 +663,9 @@ public class MapFile {
 	    if(markers.add(mark)) {
 		if((mark instanceof SMarker) && (((SMarker)mark).oid != 0))
 		    smarkers.put(((SMarker)mark).oid, (SMarker)mark);
-		defersave();
+		mark.jid = nextjid++;
+		markidx.add(mark);
+		journal(J_MARKADD, mark.jid, mark);
 		markerseq++;
 	    }
 	} finally {
@@ -364,10 +676,22 @@ public class MapFile {
     public void remove(Marker mark) {
 	lock.writeLock().lock();
 	try {
-	    if(markers.remove(mark)) {
-		if((mark instanceof SMarker) && (((SMarker)mark).oid != 0))
-		    smarkers.remove(((SMarker)mark).oid, (SMarker)mark);
-		defersave();
+	    /* Markers compare by value, so find the instance actually
+	     * being removed to get its journal ID. */
+	    Marker rm = null;
+	    for(Iterator<Marker> i = markers.iterator(); i.hasNext();) {
+		Marker cur = i.next();
+		if(cur.equals(mark)) {
+		    i.remove();
+		    rm = cur;
+		    break;
+		}
+	    }
+	    if(rm != null) {
+		if((rm instanceof SMarker) && (((SMarker)rm).oid != 0))
+		    smarkers.remove(((SMarker)rm).oid, (SMarker)rm);
+		markidx.remove(rm);
+		journal(J_MARKDEL, rm.jid, null);
 		markerseq++;
 	    }
 	} finally {
@@ -376,28 +700,143 @@ public class MapFile {
     }
 
     public void update(Marker mark) {
-	lock.readLock().lock();
+	/* Write-locked, since the marker may have moved in the
+	 * index. */
+	lock.writeLock().lock();
 	try {
-	    if(markers.contains(mark)) {
-		defersave();
+	    /* Journal under the ID of the instance actually held, as
+	     * the caller's may be a copy, and compaction renumbers
+	     * them. */
+	    Marker cur = null;
+	    for(Marker m : markers) {
+		if(m == mark) {
+		    cur = m;
+		    break;
+		} else if((cur == null) && m.equals(mark)) {
+		    cur = m;
+		}
+	    }
+	    if(cur != null) {
+		long jid = cur.jid;
+		mark.jid = jid;
+		if(markidx.contains(mark))
+		    markidx.update(mark);
+		journal(J_MARKUPD, jid, mark);
 		markerseq++;
 	    }
 	} finally {
-	    lock.readLock().unlock();
+	    lock.writeLock().unlock();
 	}
     }
 
     public SMarker smarker(String resnm, long seg, Coord tc) {
-	for(Marker mark : markers) {
+	for(Marker mark : markidx.get(seg, Area.sized(tc, Coord.of(1, 1)))) {
 	    if(!(mark instanceof SMarker))
 		continue;
 	    SMarker sm = (SMarker)mark;
-	    if(sm.res.name.equals(resnm) && (sm.seg == seg) && sm.tc.equals(tc))
+	    if(sm.res.name.equals(resnm) && sm.tc.equals(tc))
 		return(sm);
 	}
 	return(null);
     }
 
+    /*
+     * Markers bucketed by segment and grid, so that finding the
+     * markers in some area of a segment need not look at every
+     * marker there is. Kept up to date by add, remove, update and
+     * segment merges, and like the marker list itself, guarded by
+     * the file lock.
+     */
+    public static class MarkerIndex {
+	private final Map<Long, Map<Coord, List<Marker>>> segs = new HashMap<>();
+	/* By identity, since markers compare by value, and where
+	 * they were put, since their position may since have been
+	 * changed in place. */
+	private final Map<Marker, Pair<Long, Coord>> where = new IdentityHashMap<>();
+
+	public void add(Marker mark) {
+	    Coord gc = mark.tc.div(cmaps);
+	    where.put(mark, new Pair<>(mark.seg, gc));
+	    segs.computeIfAbsent(mark.seg, k -> new HashMap<>()).computeIfAbsent(gc, k -> new ArrayList<>(4)).add(mark);
+	}
+
+	public void remove(Marker mark) {
+	    Pair<Long, Coord> pos = where.remove(mark);
+	    if(pos == null)
+		return;
+	    Map<Coord, List<Marker>> seg = segs.get(pos.a);
+	    List<Marker> bucket = seg.get(pos.b);
+	    for(Iterator<Marker> i = bucket.iterator(); i.hasNext();) {
+		if(i.next() == mark) {
+		    i.remove();
+		    break;
+		}
+	    }
+	    if(bucket.isEmpty() && (seg.remove(pos.b) != null) && seg.isEmpty())
+		segs.remove(pos.a);
+	}
+
+	public void update(Marker mark) {
+	    Pair<Long, Coord> pos = where.get(mark);
+	    if((pos != null) && (pos.a == mark.seg) && pos.b.equals(mark.tc.div(cmaps)))
+		return;
+	    remove(mark);
+	    add(mark);
+	}
+
+	public boolean contains(Marker mark) {
+	    return(where.containsKey(mark));
+	}
+
+	public Collection<Long> segments() {
+	    return(segs.keySet());
+	}
+
+	/* All markers within the given tile area of a segment. */
+	public void get(long seg, Area tca, Consumer<? super Marker> dst) {
+	    Map<Coord, List<Marker>> grids = segs.get(seg);
+	    if(grids == null)
+		return;
+	    Coord gul = tca.ul.div(cmaps), gbr = tca.br.sub(1, 1).div(cmaps).add(1, 1);
+	    if((gbr.x - gul.x) * (gbr.y - gul.y) > grids.size()) {
+		for(List<Marker> bucket : grids.values()) {
+		    for(Marker mark : bucket) {
+			if(tca.contains(mark.tc))
+			    dst.accept(mark);
+		    }
+		}
+	    } else {
+		for(int y = gul.y; y < gbr.y; y++) {
+		    for(int x = gul.x; x < gbr.x; x++) {
+			List<Marker> bucket = grids.get(Coord.of(x, y));
+			if(bucket == null)
+			    continue;
+			for(Marker mark : bucket) {
+			    if(tca.contains(mark.tc))
+				dst.accept(mark);
+			}
+		    }
+		}
+	    }
+	}
+
+	public List<Marker> get(long seg, Area tca) {
+	    List<Marker> ret = new ArrayList<>();
+	    get(seg, tca, ret::add);
+	    return(ret);
+	}
+
+	public List<Marker> get(long seg) {
+	    List<Marker> ret = new ArrayList<>();
+	    Map<Coord, List<Marker>> grids = segs.get(seg);
+	    if(grids != null) {
+		for(List<Marker> bucket : grids.values())
+		    ret.addAll(bucket);
+	    }
+	    return(ret);
+	}
+    }
+
     public static class TileInfo {
 	public final Resource.Saved res;
 	public final int prio;
@@ -464,38 +903,63 @@ public class MapFile {
 	    return(texes[t]);
 	}
 
+	/* Tileset images are read in bulk once, rather than through
+	 * getRGB for every minimap pixel. */
+	private static final Map<BufferedImage, int[]> texpix = Collections.synchronizedMap(new WeakHashMap<>());
+	private static int[] texpix(BufferedImage tex) {
+	    int[] ret = texpix.get(tex);
+	    if(ret == null) {
+		int w = tex.getWidth(), h = tex.getHeight();
+		texpix.put(tex, ret = tex.getRGB(0, 0, w, h, null, 0, w));
+	    }
+	    return(ret);
+	}
+
 	public BufferedImage render(Coord off) {
+	    return(render(off, null));
+	}
+
+	/* If given, complete[0] is cleared when some tileset image
+	 * could not be had. */
+	protected BufferedImage render(Coord off, boolean[] complete) {
 	    BufferedImage[] texes = new BufferedImage[tilesets.length];
 	    boolean[] cached = new boolean[tilesets.length];
-	    WritableRaster buf = PUtils.imgraster(cmaps);
-	    Coord c = new Coord();
-	    for(c.y = 0; c.y < cmaps.y; c.y++) {
-		for(c.x = 0; c.x < cmaps.x; c.x++) {
-		    int t = gettile(c);
+	    int[][] pix = new int[tilesets.length][];
+	    int[] prio = new int[tilesets.length];
+	    for(int t = 0; t < tilesets.length; t++)
+		prio[t] = tilesets[t].prio;
+	    for(int t : tiles) {
+		if(!cached[t]) {
 		    BufferedImage tex = tiletex(t, texes, cached);
-		    int rgb = 0;
 		    if(tex != null)
-			rgb = tex.getRGB(Utils.floormod(c.x + off.x, tex.getWidth()),
-					 Utils.floormod(c.y + off.y, tex.getHeight()));
-		    buf.setSample(c.x, c.y, 0, (rgb & 0x00ff0000) >>> 16);
-		    buf.setSample(c.x, c.y, 1, (rgb & 0x0000ff00) >>>  8);
-		    buf.setSample(c.x, c.y, 2, (rgb & 0x000000ff) >>>  0);
-		    buf.setSample(c.x, c.y, 3, (rgb & 0xff000000) >>> 24);
+			pix[t] = texpix(tex);
+		    else if(complete != null)
+			complete[0] = false;
 		}
 	    }
-	    for(c.y = 1; c.y < cmaps.y - 1; c.y++) {
-		for(c.x = 1; c.x < cmaps.x - 1; c.x++) {
-		    int p = tilesets[gettile(c)].prio;
-		    if((tilesets[gettile(c.add(-1, 0))].prio > p) ||
-		       (tilesets[gettile(c.add( 1, 0))].prio > p) ||
-		       (tilesets[gettile(c.add(0, -1))].prio > p) ||
-		       (tilesets[gettile(c.add(0,  1))].prio > p))
+	    int w = cmaps.x, h = cmaps.y;
+	    WritableRaster buf = PUtils.imgraster(cmaps);
+	    byte[] dst = ((DataBufferByte)buf.getDataBuffer()).getData();
+	    for(int y = 0, i = 0; y < h; y++) {
+		boolean iy = (y > 0) && (y < h - 1);
+		for(int x = 0; x < w; x++, i++) {
+		    int t = tiles[i], p = prio[t], rgb;
+		    if(iy && (x > 0) && (x < w - 1) &&
+		       ((prio[tiles[i - 1]] > p) || (prio[tiles[i + 1]] > p) ||
+			(prio[tiles[i - w]] > p) || (prio[tiles[i + w]] > p)))
 		    {
-			buf.setSample(c.x, c.y, 0, 0);
-			buf.setSample(c.x, c.y, 1, 0);
-			buf.setSample(c.x, c.y, 2, 0);
-			buf.setSample(c.x, c.y, 3, 255);
+			rgb = 0xff000000;
+		    } else if(pix[t] != null) {
+			int tw = texes[t].getWidth(), th = texes[t].getHeight();
+			rgb = pix[t][Utils.floormod(x + off.x, tw) + (Utils.floormod(y + off.y, th) * tw)];
+		    } else {
+			rgb = 0;
 		    }
+		    int o = i * 4;
+		    dst[o + 0] = (byte)(rgb >>> 16);
+		    dst[o + 1] = (byte)(rgb >>>  8);
+		    dst[o + 2] = (byte)(rgb >>>  0);
+		    dst[o + 3] = (byte)(rgb >>> 24);
 		}
 	    }
 	    return(PUtils.rasterimg(buf));
@@ -515,7 +979,8 @@ public class MapFile {
 	}
 
 	public BufferedImage olrender(Coord off, String tag) {
-	    WritableRaster buf = PUtils.imgraster(cmaps);
+	    List<boolean[]> masks = new ArrayList<>();
+	    List<Color> cols = new ArrayList<>();
 	    for(Overlay ol : ols) {
 		MCache.ResOverlay olid = ol.olid.get().flayer(MCache.ResOverlay.class);
 		if(!olid.tags().contains(tag))
@@ -523,17 +988,36 @@ public class MapFile {
 		Color col = olcol(olid);
 		if(col == null)
 		    continue;
-		Coord c = new Coord();
-		for(c.y = 0; c.y < cmaps.y; c.y++) {
-		    for(c.x = 0; c.x < cmaps.x; c.x++) {
-			if(ol.get(c)) {
-			    buf.setSample(c.x, c.y, 0, ((col.getRed()   * col.getAlpha()) + (buf.getSample(c.x, c.y, 1) * (255 - col.getAlpha()))) / 255);
-			    buf.setSample(c.x, c.y, 1, ((col.getGreen() * col.getAlpha()) + (buf.getSample(c.x, c.y, 1) * (255 - col.getAlpha()))) / 255);
-			    buf.setSample(c.x, c.y, 2, ((col.getBlue()  * col.getAlpha()) + (buf.getSample(c.x, c.y, 2) * (255 - col.getAlpha()))) / 255);
-			    buf.setSample(c.x, c.y, 3, Math.max(buf.getSample(c.x, c.y, 3), col.getAlpha()));
-			}
+		masks.add(ol.ol);
+		cols.add(col);
+	    }
+	    int n = masks.size();
+	    boolean[][] mv = masks.toArray(new boolean[0][]);
+	    int[] cr = new int[n], cg = new int[n], cb = new int[n], ca = new int[n];
+	    for(int j = 0; j < n; j++) {
+		Color col = cols.get(j);
+		ca[j] = col.getAlpha();
+		cr[j] = col.getRed() * ca[j]; cg[j] = col.getGreen() * ca[j]; cb[j] = col.getBlue() * ca[j];
+	    }
+	    WritableRaster buf = PUtils.imgraster(cmaps);
+	    byte[] dst = ((DataBufferByte)buf.getDataBuffer()).getData();
+	    for(int i = 0, o = 0; i < cmaps.x * cmaps.y; i++, o += 4) {
+		int r = 0, g = 0, b = 0, a = 0;
+		for(int j = 0; j < n; j++) {
+		    if(mv[j][i]) {
+			/* Red blends against the previous green, as
+			 * it always has; the output is kept as it was. */
+			int ia = 255 - ca[j];
+			r = (cr[j] + (g * ia)) / 255;
+			b = (cb[j] + (b * ia)) / 255;
+			g = (cg[j] + (g * ia)) / 255;
+			a = Math.max(a, ca[j]);
 		    }
 		}
+		dst[o + 0] = (byte)r;
+		dst[o + 1] = (byte)g;
+		dst[o + 2] = (byte)b;
+		dst[o + 3] = (byte)a;
 	    }
 	    return(PUtils.rasterimg(buf));
 	}
@@ -852,6 +1336,42 @@ public class MapFile {
 	    this.sc = sc;
 	}
 
+	/* The tileset resources that are actually loaded may be newer
+	 * than those the grid was saved with, and change their
+	 * textures under an unchanged grid, so their versions go into
+	 * the key of the rendered image as well. */
+	private long imgkey() {
+	    long ret = mtime;
+	    for(TileInfo ts : tilesets) {
+		int ver;
+		try {
+		    ver = ts.res.get().ver;
+		} catch(Resource.LoadException e) {
+		    ver = -1;
+		}
+		ret = (ret * 31) + ts.res.name.hashCode();
+		ret = (ret * 31) + ver;
+	    }
+	    return(ret);
+	}
+
+	/* Like render(), but going through the image cache of the
+	 * map file, keyed on the mtime of this zoom grid and its
+	 * tilesets. */
+	public BufferedImage render(MapFile file, Coord off) {
+	    if(!imgcache.get())
+		return(render(off));
+	    long key = imgkey();
+	    BufferedImage ret = file.loadimg(key, "zimg-%x-%d-%d-%d", seg, lvl, sc.x, sc.y);
+	    if(ret == null) {
+		boolean[] complete = {true};
+		ret = render(off, complete);
+		if(complete[0])
+		    file.storeimg(ret, key, "zimg-%x-%d-%d-%d", seg, lvl, sc.x, sc.y);
+	    }
+	    return(ret);
+	}
+
 	public static ZoomGrid fetch(MapFile file, Segment seg, int lvl, Coord sc) {
 	    ZoomGrid loaded = load(file, seg.id, lvl, sc);
 	    if(loaded != null)
@@ -1096,6 +1616,7 @@ public class MapFile {
 		}
 		try {
 		    file.sstore("zgrid-%x-%d-%d-%d", seg, lvl, sc.x, sc.y).close();
+		    file.sstore("zimg-%x-%d-%d-%d", seg, lvl, sc.x, sc.y).close();
 		} catch(IOException e) {
 		    throw(new StreamMessage.IOError(e));
 		}
@@ -1225,6 +1746,11 @@ public class MapFile {
 	    }
 	}
 
+	public Collection<Long> gridids() {
+	    checklock();
+	    return(Collections.unmodifiableCollection(map.values()));
+	}
+
 	public Indir<Grid> grid(Coord gc) {
 	    checklock();
 	    synchronized(ccache) {
@@ -1450,7 +1976,7 @@ public class MapFile {
 		    throw(new StreamMessage.IOError(e));
 		}
 		if(knownsegs.remove(id))
-		    defersave();
+		    journal(J_SEGDEL, id, null);
 	    } else {
 		OutputStream fp;
 		try {
@@ -1468,7 +1994,7 @@ public class MapFile {
 		    z.finish();
 		}
 		if(knownsegs.add(id))
-		    defersave();
+		    journal(J_SEGADD, id, null);
 	    }
 	});
 
@@ -1482,17 +2008,17 @@ public class MapFile {
 	    gridinfo.put(id, new GridInfo(id, dst.id, dc));
 	}
 	boolean mf = false;
-	for(Marker mark : markers) {
-	    if(mark.seg == src.id) {
-		mark.seg = dst.id;
-		mark.tc = mark.tc.sub(soff.mul(cmaps));
-		mf = true;
-	    }
+	for(Marker mark : markidx.get(src.id)) {
+	    mark.seg = dst.id;
+	    mark.tc = mark.tc.sub(soff.mul(cmaps));
+	    markidx.update(mark);
+	    journal(J_MARKUPD, mark.jid, mark);
+	    mf = true;
 	}
 	if(mf)
 	    markerseq++;
-	knownsegs.remove(src.id);
-	defersave();
+	if(knownsegs.remove(src.id))
+	    journal(J_SEGDEL, src.id, null);
 	synchronized(procmon) {
 	    dirty.add(dst);
 	    process();
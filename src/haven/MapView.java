@@ -761,10 +761,21 @@ public class MapView extends PView implements DTarget, Console.Directory, Widget
     }
     
     private final Gobs gobs;
+    public static final Config.Variable<Boolean> cullgobs = Config.Variable.propb("haven.cull.gobs", true);
+    public static final Config.Variable<Double> culldist = Config.Variable.propf("haven.cull.dist", 1320.0);
+    public static final Config.Variable<Double> cullsmall = Config.Variable.propf("haven.cull.small", 330.0);
+    public static final Config.Variable<Double> cullshadow = Config.Variable.propf("haven.cull.shadow", 660.0);
+
     private class Gobs implements RenderTree.Node, OCache.ChangeCallback {
+	static final int VISIBLE = 0, NOSHADOW = 1, CULLED = 2;
 	final OCache oc = glob.oc;
 	final Map<Gob, Loader.Future<?>> adding = new HashMap<>();
 	final Map<Gob, RenderTree.Slot> current = new HashMap<>();
+	/* Gobs that are not fully drawn. Culled gobs have no slot in
+	 * current; the others are in both. */
+	final Map<Gob, Integer> culls = new HashMap<>();
+	int ndrawn, nculled, nnoshadow;
+	double lastcull = 0;
 	RenderTree.Slot slot;
 
 	private void addgob(Gob ob) {
@@ -785,9 +796,11 @@ public class MapView extends PView implements DTarget, Console.Directory, Widget
 		    return;
 		}
 		synchronized(this) {
-		    if(adding.remove(ob) != null)
+		    if(adding.remove(ob) != null) {
 			current.put(ob, nslot);
-		    else
+			culls.remove(ob);
+			ob.culled = false;
+		    } else
 			nslot.remove();
 		}
 	    }
@@ -817,6 +830,9 @@ public class MapView extends PView implements DTarget, Console.Directory, Widget
 		for(Loader.Future<?> task : tasks)
 		    task.restart();
 		current.clear();
+		for(Gob ob : culls.keySet())
+		    ob.culled = false;
+		culls.clear();
 	    }
 	}
 
@@ -832,6 +848,8 @@ public class MapView extends PView implements DTarget, Console.Directory, Widget
 	    RenderTree.Slot slot;
 	    synchronized(this) {
 		slot = current.remove(ob);
+		culls.remove(ob);
+		ob.culled = false;
 		if(slot == null) {
 		    Loader.Future<?> t = adding.remove(ob);
 		    if(t != null)
@@ -848,6 +866,155 @@ public class MapView extends PView implements DTarget, Console.Directory, Widget
 	    }
 	}
 
+	/* Planes of the view frustum, as (a, b, c, d) quadruples
+	 * with normalized normals pointing inwards. */
+	private float[] frustum(Matrix4f pv) {
+	    float[] m = pv.m, ret = new float[24];
+	    for(int i = 0; i < 6; i++) {
+		int r = i / 2;
+		float sgn = ((i & 1) == 0) ? 1 : -1;
+		float a = m[3] + (sgn * m[r]), b = m[7] + (sgn * m[r + 4]), c = m[11] + (sgn * m[r + 8]), d = m[15] + (sgn * m[r + 12]);
+		float l = (float)Math.sqrt((a * a) + (b * b) + (c * c));
+		ret[(i * 4) + 0] = a / l; ret[(i * 4) + 1] = b / l; ret[(i * 4) + 2] = c / l; ret[(i * 4) + 3] = d / l;
+	    }
+	    return(ret);
+	}
+
+	/* The frustum test is made against the bounding sphere swept
+	 * along the gob's shadow, as given by (sx, sy) per unit of
+	 * height and no longer than shadows are drawn, so that gobs
+	 * just out of view still cast their shadows into it, and is
+	 * widened by anything drawn around the gob, such as range
+	 * rings. */
+	private int cullmode(Gob ob, Coord3f c, float[] fr, float sx, float sy, Coord3f cc, int cur) {
+	    if((ob.id == plgob) || (ob.getattr(Following.class) != null))
+		return(VISIBLE);
+	    float[] bs = ob.placed.bsphere();
+	    float x = c.x, y = -c.y, z = c.z + bs[0], r = bs[1];
+	    float vr = Math.max(r, ob.extent() + Math.abs(bs[0]));
+	    float h = Math.max(bs[0] + r, 0), sl = (float)Math.hypot(sx, sy);
+	    if(sl * h > cullshadow.get())
+		h = cullshadow.get().floatValue() / sl;
+	    float x2 = x + (sx * h), y2 = y + (sy * h), z2 = c.z;
+	    /* Gobs that are drawn must be further out to be culled
+	     * than culled gobs must be to be drawn again, so that
+	     * nothing flickers at the edges. */
+	    float hyst = (cur == CULLED) ? 0 : (float)tilesz.x * 2;
+	    float fm = (float)tilesz.x * 2 + hyst;
+	    for(int i = 0; i < 24; i += 4) {
+		float lim = -(vr + fm);
+		if(((fr[i] * x) + (fr[i + 1] * y) + (fr[i + 2] * z) + fr[i + 3] < lim) &&
+		   ((fr[i] * x2) + (fr[i + 1] * y2) + (fr[i + 2] * z2) + fr[i + 3] < lim))
+		    return(CULLED);
+	    }
+	    double dist = Math.hypot(c.x - cc.x, c.y - cc.y) - r - hyst;
+	    boolean small = (r < tilesz.x) || ob.is(GobTag.HERB);
+	    if(dist > (small ? cullsmall : culldist).get())
+		return(CULLED);
+	    if(dist > cullshadow.get())
+		return(NOSHADOW);
+	    return(VISIBLE);
+	}
+
+	private int setmode(Gob ob, int cur, int nm) {
+	    RenderTree.Slot slot = this.slot;
+	    if(slot == null)
+		return(cur);
+	    synchronized(ob) {
+		RenderTree.Slot nslot = null, oslot;
+		if(nm != CULLED) {
+		    try {
+			nslot = slot.add(ob.placed, (nm == NOSHADOW) ? ShadowMap.maskshadow : null);
+		    } catch(Loading | RenderTree.SlotRemoved e) {
+			return(cur);
+		    }
+		}
+		synchronized(this) {
+		    Integer prev = culls.get(ob);
+		    if((prev == null) ? !current.containsKey(ob) : (prev != cur)) {
+			/* Removed or re-added while we were at it. */
+			oslot = nslot;
+			nm = cur;
+		    } else {
+			oslot = (nslot == null) ? current.remove(ob) : current.put(ob, nslot);
+			if(nm == VISIBLE)
+			    culls.remove(ob);
+			else
+			    culls.put(ob, nm);
+		    }
+		}
+		if(oslot != null) {
+		    try {
+			oslot.remove();
+		    } catch(RenderTree.SlotRemoved e) {
+		    }
+		}
+	    }
+	    return(nm);
+	}
+
+	/* Takes gobs that are out of view, or too far away to matter,
+	 * out of the render tree, and far away ones out of the shadow
+	 * map, and puts them back as the camera moves. */
+	void cull() {
+	    double now = Utils.rtime();
+	    if((slot == null) || (camera == null) || (now - lastcull < 0.1))
+		return;
+	    lastcull = now;
+	    boolean on = cullgobs.get();
+	    Coord3f cc;
+	    try {
+		cc = getcc();
+	    } catch(Loading l) {
+		return;
+	    }
+	    float[] fr = frustum(camera.proj.fin(Matrix4f.id).mul(camera.view.fin(Matrix4f.id)));
+	    /* Shadows fall away from the light, by as much sideways per
+	     * unit of height as the light is low. */
+	    float sx = 0, sy = 0;
+	    DirLight light = amblight;
+	    if((smap != null) && (light != null) && (light.dir[2] > 0.01f)) {
+		sx = -light.dir[0] / light.dir[2];
+		sy = -light.dir[1] / light.dir[2];
+	    }
+	    List<Gob> obs = new ArrayList<>();
+	    synchronized(this) {
+		obs.addAll(current.keySet());
+		for(Map.Entry<Gob, Integer> ent : culls.entrySet()) {
+		    if(ent.getValue() == CULLED)
+			obs.add(ent.getKey());
+		}
+	    }
+	    int nd = 0, nc = 0, ns = 0;
+	    for(Gob ob : obs) {
+		int cur;
+		synchronized(this) {
+		    cur = culls.getOrDefault(ob, VISIBLE);
+		}
+		int nm = on ? cur : VISIBLE;
+		try {
+		    Coord3f c = ob.getc();
+		    ob.viewdist = (float)Math.hypot(c.x - cc.x, c.y - cc.y);
+		    if(on)
+			nm = cullmode(ob, c, fr, sx, sy, cc, cur);
+		} catch(Loading l) {
+		}
+		if(nm != cur)
+		    nm = setmode(ob, cur, nm);
+		ob.culled = (nm == CULLED);
+		switch(nm) {
+		case VISIBLE:  nd++; break;
+		case NOSHADOW: nd++; ns++; break;
+		case CULLED:   nc++; break;
+		}
+	    }
+	    ndrawn = nd; nculled = nc; nnoshadow = ns;
+	}
+
+	public String stats() {
+	    return(String.format("%d drawn (%d without shadow), %d culled", ndrawn, nnoshadow, nculled));
+	}
+
 	public Loading loading() {
 	    synchronized(this) {
 		if(adding.isEmpty())
@@ -1202,6 +1369,7 @@ public class MapView extends PView implements DTarget, Console.Directory, Widget
 	String ret = String.format("Tree %s", tree.stats());
 	if(back != null)
 	    ret = String.format("%s, Inst %s, Draw %s", ret, instancer.stats(), back.stats());
+	ret = String.format("%s, Gobs %s", ret, gobs.stats());
 	return(ret);
     }
 
@@ -1931,6 +2099,7 @@ public class MapView extends PView implements DTarget, Console.Directory, Widget
 	    camload = e;
 	}
 	basic(Camera.class, camera);
+	gobs.cull();
 	amblight();
 	updsmap(amblight);
 	updweather();
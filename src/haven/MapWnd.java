@@ -425,19 +425,21 @@ public class MapWnd extends WindowX implements Console.Directory {
 	if(visible && (markerseq != view.file.markerseq)) {
 	    if(view.file.lock.readLock().tryLock()) {
 		try {
-		    Map<Marker, ListMarker> prev = new HashMap<>();
-		    for(ListMarker pm : this.markers)
-			prev.put(pm.mark, pm);
+		    /* Keep the previous entries in their sorted order and
+		     * add new ones at the end, so that sorting the list
+		     * again is close to linear. */
+		    Set<Marker> prev = Collections.newSetFromMap(new IdentityHashMap<>());
 		    List<ListMarker> markers = new ArrayList<>();
-		    for(Marker mark : view.file.markers) {
-			if(!mflt.test(mark))
+		    for(ListMarker lm : this.markers) {
+			if(!view.file.markidx.contains(lm.mark) || !mflt.test(lm.mark))
 			    continue;
-			ListMarker lm = prev.get(mark);
-			if(lm == null)
-			    lm = new ListMarker(mark);
-			else
-			    lm.type = MarkerType.of(lm.mark);
+			lm.type = MarkerType.of(lm.mark);
 			markers.add(lm);
+			prev.add(lm.mark);
+		    }
+		    for(Marker mark : view.file.markers) {
+			if(mflt.test(mark) && !prev.contains(mark))
+			    markers.add(new ListMarker(mark));
 		    }
 		    markers.sort(mcmp);
 		    this.markers = markers;
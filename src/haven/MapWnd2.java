@@ -132,9 +132,9 @@ public class MapWnd2 extends MapWnd {
 			throw (new Loading());
 		    Coord sc = tc.add(info.sc.sub(obg.gc).mul(cmaps));
 		    //Check for duplicate
-		    for (final Marker mark : view.file.markers) {
+		    for (final Marker mark : view.file.markidx.get(info.seg, Area.sized(sc, Coord.of(1, 1)))) {
 			if(mark instanceof CustomMarker) {
-			    if(mark.seg == info.seg && sc.equals(mark.tc) && icon.equals(((CustomMarker) mark).res.name)) {
+			    if(sc.equals(mark.tc) && icon.equals(((CustomMarker) mark).res.name)) {
 				return;
 			    }
 			}
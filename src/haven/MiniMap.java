@@ -521,7 +521,7 @@ public class MiniMap extends Widget {
 	    if(img_c == null) {
 		img_c = new CachedImage(grid -> {
 			if(grid instanceof MapFile.ZoomGrid) {
-			    return(Defer.later(() -> new TexI(grid.render(sc.mul(cmaps)))));
+			    return(Defer.later(() -> new TexI(((MapFile.ZoomGrid)grid).render(file, sc.mul(cmaps)))));
 			} else {
 			    return(Defer.later(new Defer.Callable<Tex>() {
 				    MapFile.View view = new MapFile.View(seg);
@@ -570,10 +570,7 @@ public class MiniMap extends Widget {
 		if(file.lock.readLock().tryLock()) {
 		    try {
 			ArrayList<DisplayMarker> marks = new ArrayList<>();
-			for(Marker mark : file.markers) {
-			    if((mark.seg == this.seg.id) && mapext.contains(mark.tc))
-				marks.add(new DisplayMarker(mark, ui));
-			}
+			file.markidx.get(this.seg.id, mapext, mark -> marks.add(new DisplayMarker(mark, ui)));
 			marks.trimToSize();
 			markers = (marks.size() == 0) ? Collections.emptyList() : marks;
 			markerseq = file.markerseq;
@@ -666,6 +663,36 @@ public class MiniMap extends Widget {
 	}
     }
 
+    /* Objects are only looked for around what is on display, and
+     * around the player, out to about a map grid, so that icons
+     * still get noticed as soon as their objects are received. */
+    private Iterable<Gob> iconcands(OCache oc) {
+	Location dloc = this.dloc, sessloc = this.sessloc;
+	Gob pl = player();
+	if((dloc == null) || (sessloc == null) || (dloc.seg != sessloc.seg) || (pl == null))
+	    return(oc);
+	Coord2d vc = dloc.tc.sub(sessloc.tc).mul(tilesz);
+	double r = Math.hypot(sz.x + UI.scale(32), sz.y + UI.scale(32)) * 0.5 * scalef() * tilesz.x;
+	r = Math.max(r, pl.rc.dist(vc) + (cmaps.x * tilesz.x));
+	return(oc.within(vc, r));
+    }
+
+    private void findicon(Gob gob, Map<GobIcon, DisplayIcon> pmap, List<DisplayIcon> dst) {
+	try {
+	    GobIcon icon = gob.getattr(GobIcon.class);
+	    if(icon != null) {
+		GobIcon.Setting conf = iconconf.get(icon.icon());
+		if((conf != null) && conf.show && GobIconCategoryList.GobCategory.categorize(conf).enabled()) {
+		    DisplayIcon disp = pmap.remove(icon);
+		    if(disp == null)
+			disp = new DisplayIcon(icon, conf);
+		    disp.update(gob.rc, gob.a);
+		    dst.add(disp);
+		}
+	    }
+	} catch(Loading l) {}
+    }
+
     public List<DisplayIcon> findicons(Collection<? extends DisplayIcon> prev) {
 	if((ui.sess == null) || (iconconf == null))
 	    return(Collections.emptyList());
@@ -678,20 +705,13 @@ public class MiniMap extends Widget {
 	List<DisplayIcon> ret = new ArrayList<>();
 	OCache oc = ui.sess.glob.oc;
 	synchronized(oc) {
-	    for(Gob gob : oc) {
-		try {
-		    GobIcon icon = gob.getattr(GobIcon.class);
-		    if(icon != null) {
-			GobIcon.Setting conf = iconconf.get(icon.icon());
-			if((conf != null) && conf.show && GobIconCategoryList.GobCategory.categorize(conf).enabled()) {
-			    DisplayIcon disp = pmap.remove(icon);
-			    if(disp == null)
-				disp = new DisplayIcon(icon, conf);
-			    disp.update(gob.rc, gob.a);
-			    ret.add(disp);
-			}
-		    }
-		} catch(Loading l) {}
+	    for(Gob gob : iconcands(oc))
+		findicon(gob, pmap, ret);
+	    /* Icons already shown stay so while their objects are
+	     * around, so that each is only noticed once. */
+	    for(DisplayIcon disp : new ArrayList<>(pmap.values())) {
+		if(!disp.gob.disposed())
+		    findicon(disp.gob, pmap, ret);
 	    }
 	}
 	for(DisplayIcon disp : pmap.values()) {
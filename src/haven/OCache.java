@@ -29,6 +29,7 @@ package haven;
 import java.util.*;
 import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.lang.annotation.*;
 import java.lang.reflect.*;
 import haven.render.Render;
@@ -63,7 +64,11 @@ public class OCache implements Iterable<Gob> {
     public static final Coord2d posres = Coord2d.of(0x1.0p-10, 0x1.0p-10).mul(11, 11);
     /* XXX: Use weak refs */
     private Collection<Collection<Gob>> local = new LinkedList<Collection<Gob>>();
-    private MultiMap<Long, Gob> objs = new HashMultiMap<Long, Gob>();
+    private LongMultiMap<Gob> objs = new LongMultiMap<Gob>();
+    /* Array copy of all objects for the per-frame tick paths,
+     * rebuilt only after objects have been added or removed. */
+    private volatile Gob[] snapshot = null;
+    private final GobGrid grid = new GobGrid();
     private Glob glob;
     private final Collection<ChangeCallback> cbs = new WeakList<ChangeCallback>();
     public final PathVisualizer paths = new PathVisualizer();
@@ -134,7 +139,7 @@ public class OCache implements Iterable<Gob> {
 	}
     }
     
-    public synchronized Stream<Gob> stream() {return Stream.of(objs.values().toArray(new Gob[0]));}
+    public synchronized Stream<Gob> stream() {return Stream.of(objs.toArray(new Gob[0]));}
 
     public synchronized void callback(ChangeCallback cb) {
 	cbs.add(cb);
@@ -150,6 +155,8 @@ public class OCache implements Iterable<Gob> {
 	    synchronized(this) {
 		cbs = new ArrayList<>(this.cbs);
 		objs.put(ob.id, ob);
+		grid.add(ob);
+		snapshot = null;
 	    }
 	    for(ChangeCallback cb : cbs) {
 		cb.added(ob);
@@ -164,6 +171,10 @@ public class OCache implements Iterable<Gob> {
 	    old = objs.remove(ob.id, ob);
 	    if((old != null) && (old != ob))
 		throw(new RuntimeException(String.format("object %d removed wrong object", ob.id)));
+	    if(old != null) {
+		grid.remove(old);
+		snapshot = null;
+	    }
 	    cbs = new ArrayList<>(this.cbs);
 	}
 	if(old != null) {
@@ -175,21 +186,39 @@ public class OCache implements Iterable<Gob> {
 	}
     }
 
-    public void ctick(double dt) {
-	ArrayList<Gob> copy = new ArrayList<Gob>();
+    /* Local collections may change behind our back, so the
+     * snapshot is only kept while there are none. */
+    private Gob[] snapshot() {
+	Gob[] ret = snapshot;
+	if(ret != null)
+	    return(ret);
 	synchronized(this) {
+	    if((ret = snapshot) != null)
+		return(ret);
+	    if(local.isEmpty())
+		return(snapshot = objs.toArray(new Gob[0]));
+	    ArrayList<Gob> copy = new ArrayList<Gob>();
 	    for(Gob g : this)
 		copy.add(g);
+	    return(copy.toArray(new Gob[0]));
 	}
-	Consumer<Gob> task = g -> {
-	    synchronized(g) {
-		g.ctick(dt);
+    }
+
+    public void ctick(double dt) {
+	Gob[] copy = snapshot();
+	if(!Config.par.get()) {
+	    for(Gob g : copy) {
+		synchronized(g) {
+		    g.ctick(dt);
+		}
 	    }
-	};
-	if(!Config.par.get())
-	    copy.forEach(task);
-	else
-	    copy.parallelStream().forEach(task);
+	} else {
+	    Arrays.stream(copy).parallel().forEach(g -> {
+		    synchronized(g) {
+			g.ctick(dt);
+		    }
+		});
+	}
 	paths.tick(dt);
 	if(glob.sess.ui != null && glob.sess.ui.gui != null && glob.sess.ui.gui.mapfile != null) {
 	    glob.sess.ui.gui.mapfile.updateGobMarkers();
@@ -197,21 +226,17 @@ public class OCache implements Iterable<Gob> {
     }
 
     public void gtick(Render g) {
-	ArrayList<Gob> copy = new ArrayList<Gob>();
-	synchronized(this) {
-	    for(Gob ob : this)
-		copy.add(ob);
-	}
+	Gob[] copy = snapshot();
 	if(!Config.par.get()) {
-	    copy.forEach(ob -> {
-		    synchronized(ob) {
-			ob.gtick(g);
-		    }
-		});
+	    for(Gob ob : copy) {
+		synchronized(ob) {
+		    ob.gtick(g);
+		}
+	    }
 	} else {
 	    Collection<Render> subs = new ArrayList<>();
 	    ThreadLocal<Render> subv = new ThreadLocal<>();
-	    copy.parallelStream().forEach(ob -> {
+	    Arrays.stream(copy).parallel().forEach(ob -> {
 		    Render sub = subv.get();
 		    if(sub == null) {
 			sub = g.env().render();
@@ -231,6 +256,8 @@ public class OCache implements Iterable<Gob> {
 
     @SuppressWarnings("unchecked")
     public Iterator<Gob> iterator() {
+	if(local.isEmpty())
+	    return(objs.values().iterator());
 	Collection<Iterator<Gob>> is = new LinkedList<Iterator<Gob>>();
 	for(Collection<Gob> gc : local)
 	    is.add(gc.iterator());
@@ -242,6 +269,7 @@ public class OCache implements Iterable<Gob> {
 	synchronized(this) {
 	    cbs = new ArrayList<>(this.cbs);
 	    local.add(gob);
+	    snapshot = null;
 	}
 	for(Gob g : gob) {
 	    synchronized(g) {
@@ -256,6 +284,7 @@ public class OCache implements Iterable<Gob> {
 	synchronized(this) {
 	    cbs = new ArrayList<>(this.cbs);
 	    local.remove(gob);
+	    snapshot = null;
 	}
 	for(Gob g : gob) {
 	    synchronized(g) {
@@ -269,6 +298,30 @@ public class OCache implements Iterable<Gob> {
 	return(objs.get(id));
     }
 
+    /* All objects with the given ID, since virtual objects may
+     * share theirs with others. */
+    public synchronized List<Gob> getgobs(long id) {
+	return(new ArrayList<Gob>(objs.getall(id)));
+    }
+
+    synchronized void moved(Gob ob) {
+	grid.moved(ob);
+    }
+
+    /* Spatial queries over the server-side positions (Gob.rc) of
+     * all non-local objects. */
+    public synchronized List<Gob> within(Coord2d c, double r) {
+	return(grid.within(c, r));
+    }
+
+    public synchronized List<Gob> inArea(Area tiles) {
+	return(grid.inArea(tiles));
+    }
+
+    public synchronized Gob nearest(Coord2d c, double r, Predicate<? super Gob> test) {
+	return(grid.nearest(c, r, test));
+    }
+
     private final List<SquareRadiiOverlay> msols = new LinkedList<>();
     public boolean dirtyMSOls = true;
 
@@ -552,7 +605,7 @@ public class OCache implements Iterable<Gob> {
 	public int fl, frame;
 	public int initframe;
 	public long id;
-	public final List<AttrDelta> attrs = new LinkedList<>();
+	public final List<AttrDelta> attrs = new ArrayList<>();
 	public boolean rem = false;
 
 	public ObjDelta(int fl, long id, int frame) {
@@ -561,6 +614,15 @@ public class OCache implements Iterable<Gob> {
 	    this.frame = frame;
 	}
 	public ObjDelta() {}
+
+	public void reset(int fl, long id, int frame) {
+	    this.fl = fl;
+	    this.id = id;
+	    this.frame = frame;
+	    this.initframe = 0;
+	    this.rem = false;
+	    attrs.clear();
+	}
     }
 
     public static class AttrDelta extends PMessage {
@@ -571,6 +633,11 @@ public class OCache implements Iterable<Gob> {
 	    this.old = ((od.fl & 4) != 0);
 	}
 
+	public AttrDelta(ObjDelta od, int type, byte[] buf, int off, int len) {
+	    super(type, buf, off, len);
+	    this.old = ((od.fl & 4) != 0);
+	}
+
 	public AttrDelta(AttrDelta from) {
 	    super(from);
 	    this.old = from.old;
@@ -581,6 +648,13 @@ public class OCache implements Iterable<Gob> {
 	}
     }
 
+    public void receive(ObjDelta[] deltas, int n) {
+	synchronized(netinfo) {
+	    for(int i = 0; i < n; i++)
+		receive(deltas[i]);
+	}
+    }
+
     public GobInfo receive(ObjDelta delta) {
 	if(delta.rem)
 	    return(netremove(delta.id, delta.frame - 1));
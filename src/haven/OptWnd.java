@@ -1208,6 +1208,12 @@ public class OptWnd extends WindowX {
 	y += STEP;
 	tx = panel.add(new CFGColorBtn(CFG.COLOR_GOB_CRITTERS, true), x + H_STEP, y).sz.x + H_STEP;
 	panel.add(new CFGBox("Critters", CFG.DISPLAY_AURA_CRITTERS), x + tx + H_STEP, y);
+	
+	y += STEP;
+	panel.add(new CFGBox("Reduce animation of distant objects", CFG.DISPLAY_ANIM_LOD, "Animates creatures further away less often, and ones out of view not at all"), x, y);
+	
+	y += STEP;
+	y = addSlider(CFG.DISPLAY_ANIM_LOD_DIST, 5, 60, "Full animation distance: %d tiles", "Creatures further away than this are animated at a reduced rate.", panel, x, y, STEP);
     
 	my = Math.max(my, y);
 	
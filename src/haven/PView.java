@@ -401,6 +401,17 @@ public abstract class PView extends Widget {
 
     public interface Render2D extends RenderTree.Node {
 	public void draw(GOut g, Pipe state);
+
+	/* Objects returning a batch are handed to it instead of
+	 * being drawn themselves, and the batch is drawn once all
+	 * objects have been visited, and so on top of all unbatched
+	 * ones. */
+	public default Batch2D batch() {return(null);}
+    }
+
+    public interface Batch2D {
+	public void add(Render2D obj, Pipe state);
+	public void draw(GOut g);
     }
 
     public static class ScreenList implements RenderList<Render2D> {
@@ -411,9 +422,20 @@ public abstract class PView extends Widget {
 	    synchronized(cur) {
 		copy = new ArrayList<>(cur);
 	    }
+	    List<Batch2D> batches = new ArrayList<>(1);
 	    for(Slot<? extends Render2D> slot : copy) {
-		slot.obj().draw(g, slot.state());
+		Render2D obj = slot.obj();
+		Batch2D batch = obj.batch();
+		if(batch == null) {
+		    obj.draw(g, slot.state());
+		} else {
+		    if(!batches.contains(batch))
+			batches.add(batch);
+		    batch.add(obj, slot.state());
+		}
 	    }
+	    for(Batch2D batch : batches)
+		batch.draw(g);
 	}
 
 	public void add(Slot<? extends Render2D> slot) {
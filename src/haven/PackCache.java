@@ -0,0 +1,664 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven;
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.net.*;
+import static haven.Utils.pj;
+
+/*
+ * A cache that keeps all its entries in a few large, append-only
+ * pack files, which are memory-mapped for reading. The pack files
+ * are scanned once when the cache is opened to build an in-memory
+ * index, so that lookups need no filesystem access at all. Stored
+ * and removed entries are appended to the last pack file, and pack
+ * files that have come to consist of mostly dead entries are
+ * compacted in the background by moving their remaining live
+ * entries to the end of a newer one.
+ *
+ * Since the index only lives in memory, a pack directory can only
+ * be used by one process at a time. Other processes will fail to
+ * open it, and should fall back to a HashDirCache instead.
+ */
+public class PackCache implements ResCache {
+    public static final Config.Variable<Boolean> enabled = Config.Variable.propb("haven.packcache", false);
+    public static final int maxseg = 1 << 29, segsize = 1 << 25;
+    private static final byte[] magic = "Haven pack cache".getBytes(StandardCharsets.US_ASCII);
+    private static final int REC_DATA = 1, REC_RM = 2;
+    private final Path dir;
+    public final URI id;
+    private final FileChannel lockfp;
+    private final List<Segment> segs = new ArrayList<>();
+    private final Index index = new Index();
+    private Thread compactor = null;
+
+    private class Segment {
+	final int seq;
+	final Path path;
+	final FileChannel fp;
+	int size, live;
+	boolean gone = false;
+	MappedByteBuffer map = null;
+
+	Segment(int seq, Path path, FileChannel fp) {
+	    this.seq = seq;
+	    this.path = path;
+	    this.fp = fp;
+	}
+
+	ByteBuffer get(int off, int len) throws IOException {
+	    if((map == null) || (off + len > map.capacity()))
+		map = fp.map(FileChannel.MapMode.READ_ONLY, 0, size);
+	    ByteBuffer ret = map.duplicate();
+	    ret.limit(off + len).position(off);
+	    return(ret.slice());
+	}
+
+	void append(ByteBuffer... data) throws IOException {
+	    long end = size;
+	    for(ByteBuffer buf : data)
+		end += buf.remaining();
+	    fp.position(size);
+	    while(fp.position() < end)
+		fp.write(data);
+	    size = (int)end;
+	}
+
+	public String toString() {
+	    return(String.format("#%d: %d bytes, %d live", seq, size, live));
+	}
+    }
+
+    /* Open-addressed, linearly probed index from entry names to
+     * their current locations. */
+    private static class Index {
+	int[] hash;
+	String[] name;
+	Segment[] seg;
+	int[] rec, off, len;
+	int n = 0;
+
+	Index() {
+	    alloc(256);
+	}
+
+	private void alloc(int sz) {
+	    hash = new int[sz];
+	    name = new String[sz];
+	    seg = new Segment[sz];
+	    rec = new int[sz];
+	    off = new int[sz];
+	    len = new int[sz];
+	}
+
+	private static int hash(String nm) {
+	    int h = nm.hashCode() * 0x9e3779b9;
+	    return(h ^ (h >>> 16));
+	}
+
+	int find(String nm) {
+	    int h = hash(nm), m = hash.length - 1;
+	    for(int i = h & m; name[i] != null; i = (i + 1) & m) {
+		if((hash[i] == h) && name[i].equals(nm))
+		    return(i);
+	    }
+	    return(-1);
+	}
+
+	void put(String nm, Segment seg, int rec, int off, int len) {
+	    if((n + 1) * 4 > hash.length * 3)
+		resize(hash.length * 2);
+	    int h = hash(nm), m = hash.length - 1, i;
+	    for(i = h & m; name[i] != null; i = (i + 1) & m) {
+		if((hash[i] == h) && name[i].equals(nm))
+		    break;
+	    }
+	    if(name[i] == null)
+		n++;
+	    this.hash[i] = h;
+	    this.name[i] = nm;
+	    this.seg[i] = seg;
+	    this.rec[i] = rec;
+	    this.off[i] = off;
+	    this.len[i] = len;
+	}
+
+	void remove(int i) {
+	    int m = hash.length - 1;
+	    for(int j = (i + 1) & m; name[j] != null; j = (j + 1) & m) {
+		int k = hash[j] & m;
+		if((i <= j) ? ((i < k) && (k <= j)) : ((i < k) || (k <= j)))
+		    continue;
+		move(j, i);
+		i = j;
+	    }
+	    name[i] = null;
+	    seg[i] = null;
+	    n--;
+	}
+
+	private void move(int from, int to) {
+	    hash[to] = hash[from]; name[to] = name[from]; seg[to] = seg[from];
+	    rec[to] = rec[from]; off[to] = off[from]; len[to] = len[from];
+	}
+
+	private void resize(int nsz) {
+	    int[] ohash = hash, orec = rec, ooff = off, olen = len;
+	    String[] oname = name;
+	    Segment[] oseg = seg;
+	    alloc(nsz);
+	    n = 0;
+	    for(int i = 0; i < ohash.length; i++) {
+		if(oname[i] != null)
+		    put(oname[i], oseg[i], orec[i], ooff[i], olen[i]);
+	    }
+	}
+
+	int reclen(int i) {
+	    return(off[i] + len[i] - rec[i]);
+	}
+    }
+
+    private PackCache(Path dir, URI id) throws IOException {
+	this.dir = dir;
+	this.id = id;
+	Files.createDirectories(dir);
+	FileChannel lockfp = FileChannel.open(pj(dir, "lock"), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+	try {
+	    if(lockfp.tryLock() == null)
+		throw(new IOException("pack cache in use by another process: " + dir));
+	} catch(IOException | RuntimeException e) {
+	    lockfp.close();
+	    throw(e);
+	}
+	this.lockfp = lockfp;
+	open();
+    }
+
+    private static int segseq(Path p) {
+	String nm = p.getFileName().toString();
+	if(!nm.endsWith(".pack") || !Utils.strcheck(nm.substring(0, nm.length() - 5), Character::isDigit) || (nm.length() == 5))
+	    return(-1);
+	try {
+	    return(Integer.parseInt(nm.substring(0, nm.length() - 5)));
+	} catch(NumberFormatException e) {
+	    return(-1);
+	}
+    }
+
+    private ByteBuffer filehead() {
+	byte[] cid = id.toString().getBytes(StandardCharsets.UTF_8);
+	ByteBuffer ret = ByteBuffer.allocate(magic.length + 2 + cid.length);
+	ret.put(magic).putShort((short)cid.length).put(cid);
+	ret.flip();
+	return(ret);
+    }
+
+    private static int readfully(FileChannel fp, ByteBuffer buf, long pos) throws IOException {
+	while(buf.hasRemaining()) {
+	    int rv = fp.read(buf, pos + buf.position());
+	    if(rv < 0)
+		break;
+	}
+	buf.flip();
+	return(buf.remaining());
+    }
+
+    private void open() throws IOException {
+	List<Path> files = new ArrayList<>();
+	try(DirectoryStream<Path> ls = Files.newDirectoryStream(dir)) {
+	    for(Path p : ls) {
+		if(segseq(p) >= 0)
+		    files.add(p);
+	    }
+	}
+	files.sort((a, b) -> Integer.compare(segseq(a), segseq(b)));
+	ByteBuffer head = filehead();
+	for(Path p : files) {
+	    FileChannel fp = Utils.ioretry(() -> FileChannel.open(p, StandardOpenOption.READ, StandardOpenOption.WRITE));
+	    ByteBuffer fhead = ByteBuffer.allocate(head.remaining());
+	    if((fp.size() > maxseg) || (readfully(fp, fhead, 0) < head.remaining()) || !fhead.equals(head)) {
+		Warning.warn("ignoring foreign pack file: " + p);
+		fp.close();
+		continue;
+	    }
+	    Segment seg = new Segment(segseq(p), p, fp);
+	    seg.size = (int)fp.size();
+	    int end = scan(seg, head.remaining());
+	    if(end < seg.size) {
+		Warning.warn(String.format("truncating damaged pack file %s at %d/%d", p, end, seg.size));
+		fp.truncate(end);
+		seg.size = end;
+	    }
+	    segs.add(seg);
+	}
+	/* Remove leftovers of compactions that could not delete their
+	 * files at the time. Only the oldest segments can be deleted
+	 * outright, since removal records in newer ones may still be
+	 * needed to shadow entries in older ones. */
+	while((segs.size() > 1) && (segs.get(0).live == 0)) {
+	    Segment seg = segs.get(0);
+	    seg.fp.close();
+	    try {
+		Files.delete(seg.path);
+	    } catch(IOException e) {
+		break;
+	    }
+	    segs.remove(0);
+	}
+    }
+
+    /* Reads only the record headers, so that nothing needs to be
+     * mapped until it is actually fetched. */
+    private int scan(Segment seg, int start) throws IOException {
+	ByteBuffer rhead = ByteBuffer.allocate(3);
+	int rec = start;
+	while(true) {
+	    rhead.clear();
+	    if(readfully(seg.fp, rhead, rec) < 3)
+		return(rec);
+	    int type = rhead.get(0);
+	    int nl = rhead.getShort(1) & 0xffff;
+	    ByteBuffer nmb = ByteBuffer.allocate(nl + 4);
+	    if(readfully(seg.fp, nmb, rec + 3) < nl + 4)
+		return(rec);
+	    int len = nmb.getInt(nl);
+	    int off = rec + 3 + nl + 4;
+	    if((len < 0) || (len > seg.size - off))
+		return(rec);
+	    String nm = new String(nmb.array(), 0, nl, StandardCharsets.UTF_8);
+	    if(type == REC_DATA) {
+		release(nm);
+		index.put(nm, seg, rec, off, len);
+		seg.live += off + len - rec;
+	    } else if(type == REC_RM) {
+		release(nm);
+	    } else {
+		return(rec);
+	    }
+	    rec = off + len;
+	}
+    }
+
+    /* Forget the current location of an entry, if any, and account
+     * for its record as dead space. */
+    private void release(String nm) {
+	int i = index.find(nm);
+	if(i >= 0) {
+	    index.seg[i].live -= index.reclen(i);
+	    index.remove(i);
+	}
+    }
+
+    /* Segments are rotated once they reach segsize, so that dead
+     * entries are not kept around for long before their segment
+     * can be compacted. No single record may be larger than half of
+     * maxseg, so that segments never exceed maxseg and offsets
+     * always fit in an int. */
+    private Segment cur() throws IOException {
+	Segment last = segs.isEmpty() ? null : segs.get(segs.size() - 1);
+	if((last != null) && (last.size < segsize))
+	    return(last);
+	return(newseg());
+    }
+
+    private Segment newseg() throws IOException {
+	Segment last = segs.isEmpty() ? null : segs.get(segs.size() - 1);
+	int seq = (last == null) ? 0 : (last.seq + 1);
+	Path p = pj(dir, seq + ".pack");
+	FileChannel fp = Utils.ioretry(() -> FileChannel.open(p, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
+	Segment seg = new Segment(seq, p, fp);
+	seg.append(filehead());
+	segs.add(seg);
+	return(seg);
+    }
+
+    private void append(int type, String nm, ByteBuffer data) throws IOException {
+	byte[] nmb = nm.getBytes(StandardCharsets.UTF_8);
+	if(nmb.length > 0xffff)
+	    throw(new IOException("cache entry name too long: " + nm));
+	ByteBuffer head = ByteBuffer.allocate(1 + 2 + nmb.length + 4);
+	head.put((byte)type).putShort((short)nmb.length).put(nmb).putInt(data.remaining());
+	head.flip();
+	if(head.remaining() + data.remaining() > maxseg / 2)
+	    throw(new IOException("cache entry too large: " + nm));
+	Segment seg = cur();
+	int rec = seg.size, len = data.remaining();
+	seg.append(head, data);
+	release(nm);
+	if(type == REC_DATA) {
+	    index.put(nm, seg, rec, rec + head.capacity(), len);
+	    seg.live += head.capacity() + len;
+	}
+    }
+
+    private void put(String nm, byte[] data) throws IOException {
+	synchronized(this) {
+	    append(REC_DATA, nm, ByteBuffer.wrap(data));
+	}
+	ckcompact();
+    }
+
+    public OutputStream store(String name) throws IOException {
+	return(new ByteArrayOutputStream() {
+		private boolean closed = false;
+
+		public void close() throws IOException {
+		    if(!closed) {
+			closed = true;
+			put(name, toByteArray());
+		    }
+		}
+	    });
+    }
+
+    public ByteBuffer fetchbuf(String name) throws IOException {
+	synchronized(this) {
+	    int i = index.find(name);
+	    if(i < 0)
+		throw(new FileNotFoundException(name));
+	    return(index.seg[i].get(index.off[i], index.len[i]));
+	}
+    }
+
+    private static class BufferInputStream extends InputStream {
+	private final ByteBuffer buf;
+
+	BufferInputStream(ByteBuffer buf) {
+	    this.buf = buf;
+	}
+
+	public int read() {
+	    return(buf.hasRemaining() ? (buf.get() & 0xff) : -1);
+	}
+
+	public int read(byte[] dst, int off, int len) {
+	    if(!buf.hasRemaining())
+		return((len == 0) ? 0 : -1);
+	    len = Math.min(len, buf.remaining());
+	    buf.get(dst, off, len);
+	    return(len);
+	}
+
+	public int available() {
+	    return(buf.remaining());
+	}
+    }
+
+    public InputStream fetch(String name) throws IOException {
+	return(new BufferInputStream(fetchbuf(name)));
+    }
+
+    public Message fetchmsg(String name) throws IOException {
+	return(new BufferMessage(fetchbuf(name)));
+    }
+
+    public void remove(String name) throws IOException {
+	synchronized(this) {
+	    if(index.find(name) < 0)
+		throw(new FileNotFoundException(name));
+	    append(REC_RM, name, ByteBuffer.allocate(0));
+	}
+	ckcompact();
+    }
+
+    public Collection<String> list() {
+	synchronized(this) {
+	    Collection<String> ret = new ArrayList<>(index.n);
+	    for(String nm : index.name) {
+		if(nm != null)
+		    ret.add(nm);
+	    }
+	    return(ret);
+	}
+    }
+
+    /* Compaction */
+
+    /* The current segment is also compacted if it has come to
+     * consist of mostly dead entries, as with entries that are
+     * frequently rewritten, lest a cache that never grows enough to
+     * rotate never be compacted at all. */
+    private Segment compactable() {
+	for(int i = 0; i < segs.size(); i++) {
+	    Segment seg = segs.get(i);
+	    if(!seg.gone && (seg.live < seg.size / 2)) {
+		if((i == segs.size() - 1) && (seg.size < segsize / 4))
+		    break;
+		return(seg);
+	    }
+	}
+	return(null);
+    }
+
+    private void ckcompact() {
+	synchronized(this) {
+	    if((compactor == null) && (compactable() != null)) {
+		compactor = new HackThread(this::compactor, "Pack cache compactor");
+		compactor.setDaemon(true);
+		compactor.start();
+	    }
+	}
+    }
+
+    private void compactor() {
+	try {
+	    while(true) {
+		Segment seg;
+		synchronized(this) {
+		    if((seg = compactable()) == null) {
+			compactor = null;
+			return;
+		    }
+		    if(seg == segs.get(segs.size() - 1))
+			newseg();
+		}
+		compact(seg);
+	    }
+	} catch(IOException e) {
+	    new Warning(e, "pack cache compaction failed").issue();
+	    synchronized(this) {
+		compactor = null;
+	    }
+	}
+    }
+
+    /* Moves the live entries of a segment to the end of the current
+     * one and deletes it. Removal records are carried along as long
+     * as there are older segments around that may contain entries
+     * they apply to. The lock is only held per entry, so that normal
+     * use can proceed concurrently. */
+    private void compact(Segment seg) throws IOException {
+	ByteBuffer buf;
+	synchronized(this) {
+	    buf = seg.get(0, seg.size);
+	}
+	buf.position(filehead().remaining());
+	while(buf.hasRemaining()) {
+	    int rec = buf.position();
+	    int type = buf.get();
+	    byte[] nmb = new byte[buf.getShort() & 0xffff];
+	    buf.get(nmb);
+	    int len = buf.getInt();
+	    int off = buf.position();
+	    buf.position(off + len);
+	    String nm = new String(nmb, StandardCharsets.UTF_8);
+	    synchronized(this) {
+		int i = index.find(nm);
+		if(type == REC_DATA) {
+		    if((i >= 0) && (index.seg[i] == seg) && (index.rec[i] == rec)) {
+			ByteBuffer data = buf.duplicate();
+			data.limit(off + len).position(off);
+			append(REC_DATA, nm, data);
+		    }
+		} else if(type == REC_RM) {
+		    if((i < 0) && (segs.get(0) != seg))
+			append(REC_RM, nm, ByteBuffer.allocate(0));
+		}
+	    }
+	}
+	synchronized(this) {
+	    seg.map = null;
+	    seg.fp.close();
+	    try {
+		Files.delete(seg.path);
+		segs.remove(seg);
+	    } catch(IOException e) {
+		/* Typically because the file is still mapped on
+		 * Windows. Keep it around, so that removal records
+		 * are still carried past it, until the next time the
+		 * cache is opened. */
+		seg.gone = true;
+	    }
+	}
+    }
+
+    public String stats() {
+	synchronized(this) {
+	    return(String.format("%d entries in %d segments: %s", index.n, segs.size(), segs));
+	}
+    }
+
+    public String toString() {
+	return("PackCache(" + id + ")");
+    }
+
+    private static long namehash(long h, String name) {
+	for(int i = 0; i < name.length(); i++)
+	    h = (h * 31) + name.charAt(i);
+	return(h);
+    }
+
+    private static final Map<URI, PackCache> current = new HashMap<>();
+    public static PackCache get(URI id) throws IOException {
+	synchronized(current) {
+	    PackCache ret = current.get(id);
+	    if(ret == null)
+		current.put(id, ret = new PackCache(pj(HashDirCache.findbase(), "packs", String.format("%016x", namehash(0, id.toString()))), id));
+	    return(ret);
+	}
+    }
+
+    public static PackCache get(String id) throws IOException {
+	return(get(Utils.uri("urn:haven-cache:" + id)));
+    }
+
+    public static PackCache create() {
+	try {
+	    if(cachebase.get() != null)
+		return(get(cachebase.get()));
+	    if(Resource.resurl.get() != null)
+		return(get(Resource.resurl.get()));
+	    return(get("default"));
+	} catch(Exception e) {
+	    new Warning(e, "could not open pack cache").issue();
+	    return(null);
+	}
+    }
+
+    /* Copies all entries of a HashDirCache into this cache. */
+    public int importfrom(HashDirCache src) throws IOException {
+	int n = 0;
+	for(Iterator<String> i = src.list(); i.hasNext();) {
+	    String nm = i.next();
+	    byte[] data;
+	    try(InputStream fp = src.fetch(nm)) {
+		data = Utils.readall(fp);
+	    } catch(FileNotFoundException e) {
+		continue;
+	    }
+	    put(nm, data);
+	    n++;
+	}
+	return(n);
+    }
+
+    public static void main(String[] args) throws IOException {
+	if(args.length < 2) {
+	    System.err.println("usage: PackCache ID-URI COMMAND [ARGS...]");
+	    System.exit(1);
+	}
+	URI id = (args[0].indexOf(':') >= 0) ? URI.create(args[0]) : Utils.uri("urn:haven-cache:" + args[0]);
+	PackCache cache = get(id);
+	switch(args[1]) {
+	case "ls":
+	    for(String nm : cache.list())
+		System.out.println(nm);
+	    break;
+	case "cat":
+	    ByteBuffer buf;
+	    try {
+		buf = cache.fetchbuf(args[2]);
+	    } catch(FileNotFoundException e) {
+		System.err.printf("%s: not found\n", args[2]);
+		System.exit(1);
+		break;
+	    }
+	    byte[] data = new byte[buf.remaining()];
+	    buf.get(data);
+	    System.out.write(data);
+	    System.out.flush();
+	    break;
+	case "rm":
+	    for(int i = 2; i < args.length; i++) {
+		try {
+		    cache.remove(args[i]);
+		} catch(FileNotFoundException e) {
+		    System.err.printf("%s: not found\n", args[i]);
+		}
+	    }
+	    break;
+	case "import":
+	    int n = cache.importfrom(HashDirCache.get(id));
+	    System.err.printf("%s: %d entries imported\n", cache.id, n);
+	    break;
+	case "compact":
+	    while(true) {
+		Segment seg;
+		synchronized(cache) {
+		    seg = cache.compactable();
+		}
+		if(seg == null)
+		    break;
+		cache.compact(seg);
+	    }
+	    System.err.println(cache.stats());
+	    break;
+	case "stat":
+	    System.err.println(cache.stats());
+	    break;
+	default:
+	    System.err.printf("%s: no such command\n", args[1]);
+	    break;
+	}
+    }
+}
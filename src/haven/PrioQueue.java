@@ -28,47 +28,186 @@ package haven;
 
 import java.util.*;
 
-public class PrioQueue<E extends Prioritized> extends LinkedList<E> {
-    public E peek() {
-	E rv = null;
-	int mp = 0;
-	for(E e : this) {
-	    int ep = e.priority();
-	    if((rv == null) || (ep > mp)) {
-		mp = ep;
-		rv = e;
-	    }
+/*
+ * Indexed binary max-heap over Prioritized elements. Elements are
+ * ordered by the priority they had when they were last added or
+ * updated, and ties are broken in insertion order, so that it
+ * behaves like the former linear-scan queue. Since priorities are
+ * mutable, whoever raises the priority of a queued element must call
+ * update() (under the same monitor as other queue operations) to
+ * restore the heap order. Elements are tracked by identity.
+ */
+public class PrioQueue<E extends Prioritized> extends AbstractQueue<E> {
+    private final Map<E, Integer> index = new IdentityHashMap<>();
+    private Object[] heap = new Object[16];
+    private int[] prio = new int[16];
+    private long[] seq = new long[16];
+    private long nseq = 0;
+    private int size = 0;
+    private int mod = 0;
+
+    private boolean above(int a, int b) {
+	if(prio[a] != prio[b])
+	    return(prio[a] > prio[b]);
+	return(seq[a] < seq[b]);
+    }
+
+    private void set(int i, Object e, int p, long s) {
+	heap[i] = e;
+	prio[i] = p;
+	seq[i] = s;
+	index.put(el(i), i);
+    }
+
+    @SuppressWarnings("unchecked")
+    private E el(int i) {
+	return((E)heap[i]);
+    }
+
+    private void siftup(int i) {
+	Object e = heap[i];
+	int p = prio[i];
+	long s = seq[i];
+	while(i > 0) {
+	    int u = (i - 1) >> 1;
+	    if((prio[u] > p) || ((prio[u] == p) && (seq[u] < s)))
+		break;
+	    set(i, heap[u], prio[u], seq[u]);
+	    i = u;
 	}
-	return(rv);
+	set(i, e, p, s);
     }
-    
-    public E element() {
-	E rv;
-	if((rv = peek()) == null)
-	    throw(new NoSuchElementException());
+
+    private void siftdown(int i) {
+	Object e = heap[i];
+	int p = prio[i];
+	long s = seq[i];
+	while(true) {
+	    int c = (i << 1) + 1;
+	    if(c >= size)
+		break;
+	    if((c + 1 < size) && above(c + 1, c))
+		c++;
+	    if((p > prio[c]) || ((p == prio[c]) && (s < seq[c])))
+		break;
+	    set(i, heap[c], prio[c], seq[c]);
+	    i = c;
+	}
+	set(i, e, p, s);
+    }
+
+    private E removeat(int i) {
+	E rv = el(i);
+	index.remove(rv);
+	int n = --size;
+	if(i != n) {
+	    Object mv = heap[n];
+	    set(i, mv, prio[n], seq[n]);
+	    heap[n] = null;
+	    siftdown(i);
+	    if(heap[i] == mv)
+		siftup(i);
+	} else {
+	    heap[n] = null;
+	}
+	mod++;
 	return(rv);
     }
-    
+
+    public boolean offer(E e) {
+	if(e == null)
+	    throw(new NullPointerException());
+	if(index.containsKey(e)) {
+	    update(e);
+	    return(true);
+	}
+	if(size == heap.length) {
+	    int nl = heap.length * 2;
+	    heap = Arrays.copyOf(heap, nl);
+	    prio = Arrays.copyOf(prio, nl);
+	    seq = Arrays.copyOf(seq, nl);
+	}
+	int i = size++;
+	heap[i] = e;
+	prio[i] = e.priority();
+	seq[i] = nseq++;
+	siftup(i);
+	mod++;
+	return(true);
+    }
+
+    public E peek() {
+	return((size == 0) ? null : el(0));
+    }
+
     public E poll() {
-	E rv = peek();
-	removeid(rv);
-	return(rv);
+	return((size == 0) ? null : removeat(0));
     }
-    
-    public E remove() {
-	E rv;
-	if((rv = poll()) == null)
-	    throw(new NoSuchElementException());
-	return(rv);
+
+    public boolean contains(Object o) {
+	return(index.containsKey(o));
     }
 
-    public boolean removeid(E el) {
-	for(Iterator<E> i = iterator(); i.hasNext();) {
-	    if(i.next() == el) {
-		i.remove();
-		return(true);
-	    }
+    /* Restores the heap order for an element whose priority has
+     * changed. Elements not in the queue are ignored. */
+    public boolean update(E el) {
+	Integer i = index.get(el);
+	if(i == null)
+	    return(false);
+	int np = el.priority();
+	if(np > prio[i]) {
+	    prio[i] = np;
+	    siftup(i);
+	} else if(np < prio[i]) {
+	    prio[i] = np;
+	    siftdown(i);
 	}
-	return(false);
+	return(true);
+    }
+
+    public boolean removeid(E el) {
+	Integer i = index.get(el);
+	if(i == null)
+	    return(false);
+	removeat(i);
+	return(true);
+    }
+
+    public boolean remove(Object o) {
+	Integer i = index.get(o);
+	if(i == null)
+	    return(false);
+	removeat(i);
+	return(true);
+    }
+
+    public void clear() {
+	Arrays.fill(heap, 0, size, null);
+	index.clear();
+	size = 0;
+	mod++;
+    }
+
+    public int size() {
+	return(size);
+    }
+
+    /* Iterates in heap order, not in priority order. */
+    public Iterator<E> iterator() {
+	return(new Iterator<E>() {
+		int i = 0, emod = mod;
+
+		public boolean hasNext() {
+		    return(i < size);
+		}
+
+		public E next() {
+		    if(emod != mod)
+			throw(new ConcurrentModificationException());
+		    if(i >= size)
+			throw(new NoSuchElementException());
+		    return(el(i++));
+		}
+	    });
     }
 }
@@ -49,6 +49,8 @@ public class RMessage extends PMessage {
     public double last = 0;
     public int retx = 0;
     public int seq;
+    double due;
+    RMessage wnext;
 
     public RMessage(int type, byte[] blob, int off, int len) {
 	super(type, blob, off, len);
@@ -32,11 +32,25 @@ public interface ResCache {
     public static final Config.Variable<java.net.URI> cachebase = Config.Variable.propu("haven.cachebase", "");
     public OutputStream store(String name) throws IOException;
     public InputStream fetch(String name) throws IOException;
+
+    /* Fetches an entry as a whole. Caches that can hand out their
+     * contents without going through a stream should override
+     * this. */
+    public default Message fetchmsg(String name) throws IOException {
+	try(InputStream in = fetch(name)) {
+	    return(new MessageBuf(Utils.readall(in)));
+	}
+    }
     
     public static ResCache global = StupidJavaCodeContainer.makeglobal();
     
     public static class StupidJavaCodeContainer {
 	private static ResCache makeglobal() {
+	    if(PackCache.enabled.get()) {
+		ResCache ret = PackCache.create();
+		if(ret != null)
+		    return(ret);
+	    }
 	    return(HashDirCache.create());
 	}
     }
@@ -79,6 +93,21 @@ public interface ResCache {
 	    }
 	}
 
+	public Message fetchmsg(String name) throws IOException {
+	    try {
+		return(pri.fetchmsg(name));
+	    } catch(FileNotFoundException e) {
+		for(ResCache c : sec) {
+		    try {
+			return(c.fetchmsg(name));
+		    } catch(FileNotFoundException e2) {
+			e.addSuppressed(e2);
+		    }
+		}
+		throw(e);
+	    }
+	}
+
 	public OutputStream store(String name) throws IOException {
 	    return(pri.store(name));
 	}
@@ -38,6 +38,7 @@ import java.net.*;
 import java.io.*;
 import java.nio.file.*;
 import java.security.*;
+import java.util.concurrent.atomic.*;
 import javax.imageio.*;
 import java.awt.image.BufferedImage;
 
@@ -279,6 +280,12 @@ public class Resource implements Serializable {
 
     public static interface ResSource {
 	public InputStream get(String name) throws IOException;
+
+	public default Message getmsg(String name) throws IOException {
+	    try(InputStream in = get(name)) {
+		return(new MessageBuf(Utils.readall(in)));
+	    }
+	}
     }
     
     public static abstract class TeeSource implements ResSource, Serializable {
@@ -314,6 +321,10 @@ public class Resource implements Serializable {
 	public InputStream get(String name) throws IOException {
 	    return(cache.fetch("res/" + name));
 	}
+
+	public Message getmsg(String name) throws IOException {
+	    return(cache.fetchmsg("res/" + name));
+	}
 	
 	public String toString() {
 	    return("cache source backed by " + cachedesc);
@@ -527,10 +538,24 @@ public class Resource implements Serializable {
 	}
     }
 
+    private static StealPool decoders = null;
+    private static StealPool decoders() {
+	if(decoders == null) {
+	    synchronized(Resource.class) {
+		if(decoders == null)
+		    decoders = new StealPool(loadergroup, "Haven resource decoder", Math.max(2, Runtime.getRuntime().availableProcessors()));
+	    }
+	}
+	return(decoders);
+    }
+
     public static class Pool {
-	public int nloaders = 2;
+	/* Loaders only fetch now, and mostly wait on the network, so
+	 * more of them than before can overlap their latency without
+	 * taking CPU from the decoders. */
+	public int nloaders = 4;
 	private final Collection<Loader> loaders = new LinkedList<Loader>();
-	private final List<ResSource> sources = new LinkedList<ResSource>();
+	private final List<ResSource> sources = new ArrayList<ResSource>();
 	private final Map<String, Resource> cache = new CacheMap<String, Resource>();
 	private final PrioQueue<Queued> queue = new PrioQueue<Queued>();
 	private final Map<String, Queued> queued = new HashMap<String, Queued>();
@@ -559,6 +584,7 @@ public class Resource implements Serializable {
 	    Resource res;
 	    LoadException error;
 	    boolean found = false;
+	    int nsrc = 0;
 
 	    Queued(String name, int ver, int prio) {
 		super(name, ver);
@@ -570,8 +596,12 @@ public class Resource implements Serializable {
 	    }
 
 	    public void boostprio(int prio) {
-		if(this.prio < prio)
-		    this.prio = prio;
+		if(this.prio < prio) {
+		    synchronized(queue) {
+			this.prio = prio;
+			queue.update(this);
+		    }
+		}
 		Queued p = awaiting;
 		if(p != null)
 		    p.boostprio(prio);
@@ -608,9 +638,26 @@ public class Resource implements Serializable {
 		}
 	    }
 
+	    private void fail(ResSource src, Throwable t) {
+		if(!(t instanceof FileNotFoundException))
+		    found = true;
+		LoadException error;
+		if(t instanceof LoadException)
+		    error = (LoadException)t;
+		else
+		    error = new LoadException(String.format("Load error in resource %s(v%d), from %s", name, ver, src), t, null);
+		error.src = src;
+		if(this.error != null) {
+		    error.prev = this.error;
+		    error.addSuppressed(this.error);
+		}
+		this.error = error;
+	    }
+
 	    private void prior(Queued prior) {
 		if((res = prior.res) == null) {
 		    error = prior.error;
+		    nsrc = 0;
 		    synchronized(queue) {
 			queue.add(this);
 			queue.notify();
@@ -626,43 +673,103 @@ public class Resource implements Serializable {
 	    }
 	}
 
-	private void handle(Queued res) {
-	    for(ResSource src : sources) {
-		try(InputStream in = src.get(res.name)) {
-		    Message msg = new StreamMessage(in);
-		    if(msg.eom()) {
-			/* XXX? This should not be necessary, but for some reason
-			 * it seems that custom client resources find their way to
-			 * create empty cache files by the same name. I don't know
-			 * how. */
-			throw(new FileNotFoundException("empty file"));
-		    }
-		    res.found = true;
-		    Resource ret = new Resource(this, res.name, res.ver);
-		    ret.source = src;
-		    ret.load(msg);
-		    res.res = ret;
-		    res.error = null;
-		    break;
+	public static class Stage {
+	    public final String name;
+	    private final AtomicInteger busy = new AtomicInteger(0);
+	    private final AtomicLong n = new AtomicLong(0), time = new AtomicLong(0), max = new AtomicLong(0);
+
+	    private Stage(String name) {
+		this.name = name;
+	    }
+
+	    private long begin() {
+		busy.getAndIncrement();
+		return(System.nanoTime());
+	    }
+
+	    private void end(long start) {
+		long t = System.nanoTime() - start;
+		time.getAndAdd(t);
+		max.accumulateAndGet(t, Math::max);
+		n.getAndIncrement();
+		busy.getAndDecrement();
+	    }
+
+	    public int busy() {return(busy.get());}
+	    public long count() {return(n.get());}
+	    public long time() {return(time.get());}
+
+	    public String toString() {
+		long n = this.n.get();
+		return(String.format("%s: %d busy, %d done, avg %.2f ms, max %.2f ms", name, busy.get(), n,
+				     (n == 0) ? 0.0 : (time.get() * 1e-6 / n), max.get() * 1e-6));
+	    }
+	}
+	public final Stage fetchstage = new Stage("fetch"), decodestage = new Stage("decode");
+	private final AtomicInteger decodeq = new AtomicInteger(0);
+
+	/* Runs on the I/O loaders. Tries the sources in order,
+	 * starting where any previous attempt left off, and hands the
+	 * first data successfully fetched over to the decoders. */
+	private void fetch(Queued res) {
+	    while(res.nsrc < sources.size()) {
+		ResSource src = sources.get(res.nsrc++);
+		Message data;
+		long start = fetchstage.begin();
+		try {
+		    data = src.getmsg(res.name);
 		} catch(Throwable t) {
-		    if(!(t instanceof FileNotFoundException))
-			res.found = true;
-		    LoadException error;
-		    if(t instanceof LoadException)
-			error = (LoadException)t;
-		    else
-			error = new LoadException(String.format("Load error in resource %s(v%d), from %s", res.name, res.ver, src), t, null);
-		    error.src = src;
-		    if(res.error != null) {
-			error.prev = res.error;
-			error.addSuppressed(res.error);
-		    }
-		    res.error = error;
+		    res.fail(src, t);
+		    continue;
+		} finally {
+		    fetchstage.end(start);
 		}
+		if(data.eom()) {
+		    /* XXX? This should not be necessary, but for some reason
+		     * it seems that custom client resources find their way to
+		     * create empty cache files by the same name. I don't know
+		     * how. */
+		    res.fail(src, new FileNotFoundException("empty file"));
+		    continue;
+		}
+		res.found = true;
+		decodeq.getAndIncrement();
+		decoders().submit(() -> decode(res, src, data));
+		return;
 	    }
 	    res.done();
 	}
 
+	/* Runs on the decoders. If decoding fails, the resource is
+	 * sent back to the loaders to be tried from the next source. */
+	private void decode(Queued res, ResSource src, Message data) {
+	    boolean ok = false;
+	    long start = decodestage.begin();
+	    try {
+		Resource ret = new Resource(this, res.name, res.ver);
+		ret.source = src;
+		ret.load(data);
+		res.res = ret;
+		res.error = null;
+		ok = true;
+	    } catch(Throwable t) {
+		res.fail(src, t);
+	    } finally {
+		decodestage.end(start);
+	    }
+	    if(!ok && (res.nsrc < sources.size())) {
+		synchronized(queue) {
+		    queue.add(res);
+		    queue.notify();
+		}
+		decodeq.getAndDecrement();
+		ckld();
+	    } else {
+		res.done();
+		decodeq.getAndDecrement();
+	    }
+	}
+
 	public Named load(String name, int ver, int prio) {
 	    Queued ret;
 	    synchronized(cache) {
@@ -781,7 +888,7 @@ public class Resource implements Serializable {
 				    return;
 			    }
 			}
-			handle(cur);
+			fetch(cur);
 			cur = null;
 		    }
 		} catch(InterruptedException e) {
@@ -796,14 +903,29 @@ public class Resource implements Serializable {
 	    }
 	}
 
+	/* Counts resources waiting to be fetched as well as those
+	 * currently being fetched or waiting to be decoded. */
 	public int qdepth() {
 	    int ret = (parent == null)?0:parent.qdepth();
 	    synchronized(queue) {
 		ret += queue.size();
 	    }
+	    ret += fetchstage.busy() + decodeq.get();
 	    return(ret);
 	}
 
+	public String stats() {
+	    int qsz, nl;
+	    synchronized(queue) {
+		qsz = queue.size();
+	    }
+	    synchronized(loaders) {
+		nl = loaders.size();
+	    }
+	    return(String.format("queued %d, %d/%d loaders, %d to decode; %s; %s",
+				 qsz, nl, nloaders, decodeq.get(), fetchstage, decodestage));
+	}
+
 	public int numloaded() {
 	    int ret = (parent == null)?0:parent.numloaded();
 	    synchronized(cache) {
@@ -921,6 +1043,19 @@ public class Resource implements Serializable {
 	remote().add(src);
     }
 
+    static {
+	Console.setscmd("resstats", new Console.Command() {
+		public void run(Console cons, String[] args) {
+		    cons.out.println("local: " + local().stats());
+		    cons.out.println("remote: " + remote().stats());
+		    synchronized(Resource.class) {
+			if(decoders != null)
+			    cons.out.println("decoders: " + decoders.stats());
+		    }
+		}
+	    });
+    }
+
     public static class LoadException extends RuntimeException {
 	public Resource res;
 	public ResSource src;
@@ -1770,6 +1905,7 @@ public class Resource implements Serializable {
 	transient public byte[] coded;
 	public final String id;
 	public double bvol = 1.0;
+	private transient String cachekey = null;
 
 	public Audio(Message buf) {
 	    int ver = buf.uint8();
@@ -1785,9 +1921,25 @@ public class Resource implements Serializable {
 
 	public void init() {}
 
+	/* Keys the decoded PCM cache by value, so that it does not
+	 * keep the resource alive. A resource may have several clips
+	 * by the same ID, so they are told apart by their order. */
+	private String cachekey() {
+	    int n = 0;
+	    for(Layer l : layers) {
+		if(l == this)
+		    break;
+		if(l instanceof Audio)
+		    n++;
+	    }
+	    return(String.format("%s@%d:%s#%d", name, ver, id, n));
+	}
+
 	public haven.Audio.CS stream() {
 	    try {
-		return(new haven.Audio.VorbisClip(new ByteArrayInputStream(coded)));
+		if(cachekey == null)
+		    cachekey = cachekey();
+		return(haven.Audio.PCMCache.global.stream(cachekey, new ByteArrayInputStream(coded)));
 	    } catch(IOException e) {
 		throw(new RuntimeException(e));
 	    }
@@ -1935,6 +2087,19 @@ public class Resource implements Serializable {
 	return(o.name.equals(this.name) && (o.ver == this.ver));
     }
 
+    /* Avoid copying layer data through a LimitMessage when the
+     * whole resource is already at hand. */
+    private static Message layermsg(Message in, int len) {
+	if(in instanceof BufferMessage)
+	    return(((BufferMessage)in).slice(len));
+	if((in instanceof MessageBuf) && (in.rt - in.rh >= len)) {
+	    Message ret = new MessageBuf(in.rbuf, in.rh, len);
+	    in.rh += len;
+	    return(ret);
+	}
+	return(new LimitMessage(in, len));
+    }
+
     private static final byte[] RESOURCE_SIG = "Haven Resource 1".getBytes(Utils.ascii);
     private void load(Message in) {
 	if(!Arrays.equals(RESOURCE_SIG, in.bytes(RESOURCE_SIG.length)))
@@ -1952,7 +2117,7 @@ public class Resource implements Serializable {
 		in.skip(len);
 		continue;
 	    }
-	    Message buf = new LimitMessage(in, len);
+	    Message buf = layermsg(in, len);
 	    Layer l = lc.cons(this, buf);
 	    if(l != null)
 		layers.add(l);
@@ -54,6 +54,7 @@ public abstract class SIWidget extends Widget {
 	if(surf != null)
 	    surf.dispose();
 	surf = null;
+	repaint();
     }
 
     public void dispose() {
@@ -336,17 +336,28 @@ public class Session implements Resource.Resolver {
 		glob.oc.receive(delta);
 	    }
 
+	    public void handle(OCache.ObjDelta[] deltas, int n) {
+		glob.oc.receive(deltas, n);
+	    }
+
 	    public void mapdata(Message msg) {
 		glob.map.mapdata(msg);
 	    }
 	};
 
-    public Session(SocketAddress server, String username, byte[] cookie, Object... args) throws InterruptedException {
+    Session(Connection conn, String username) {
 	this.character = new CharacterInfo(this);
-	this.conn = new Connection(server, username);
+	this.conn = conn;
 	this.username = username;
 	this.glob = new Glob(this);
 	conn.add(conncb);
+    }
+
+    public Session(SocketAddress server, String username, byte[] cookie, Object... args) throws InterruptedException {
+	this(new Connection(server, username), username);
+	SessionRecord.Writer rec = SessionRecord.Writer.create(username);
+	if(rec != null)
+	    conn.record(rec);
 	conn.connect(cookie, args);
 	
 	Arrays.stream(LOCAL_CACHED).forEach(this::cacheres);
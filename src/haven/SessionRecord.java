@@ -0,0 +1,269 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+
+package haven;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.text.SimpleDateFormat;
+
+/*
+ * Records the traffic a session receives, and plays such records
+ * back into a session without any socket or render context.
+ *
+ * A record is a signature followed by one deflated stream of
+ * entries, each a kind byte and a microsecond timestamp relative
+ * to the start of the session, followed by the data of the entry:
+ * the type and payload of a reliable message after ordering and
+ * defragmentation, or the payload of a map or object data packet.
+ */
+public class SessionRecord {
+    public static final Config.Variable<Path> recdir = Config.Variable.propp("haven.sessrec", "");
+    private static final byte[] SIG = "Haven session record 1".getBytes(Utils.ascii);
+    public static final int REC_END = 0;
+    public static final int REC_REL = 1;
+    public static final int REC_MAPDATA = 2;
+    public static final int REC_OBJDATA = 3;
+
+    public static class Writer {
+	private final StreamMessage out;
+	private final ZMessage z;
+	private final double start;
+	private boolean failed = false;
+
+	public Writer(OutputStream fp) {
+	    out = new StreamMessage(fp);
+	    out.addbytes(SIG);
+	    z = new ZMessage(out);
+	    start = Utils.rtime();
+	}
+
+	public static Writer create(String username) {
+	    Path dir = recdir.get();
+	    if(dir == null)
+		return(null);
+	    String nm = String.format("%s-%s.hsr", username, new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()));
+	    try {
+		Files.createDirectories(dir);
+		return(new Writer(new BufferedOutputStream(Files.newOutputStream(dir.resolve(nm)))));
+	    } catch(IOException e) {
+		new Warning(e, "could not create session record").issue();
+		return(null);
+	    }
+	}
+
+	private void head(int kind) {
+	    z.adduint8(kind);
+	    z.addint64(Math.round((Utils.rtime() - start) * 1e6));
+	}
+
+	private void body(Message msg) {
+	    z.addint32(msg.rt - msg.rh);
+	    z.addbytes(msg.rbuf, msg.rh, msg.rt - msg.rh);
+	}
+
+	private void fail(Throwable e) {
+	    failed = true;
+	    new Warning(e, "session recording stopped").issue();
+	}
+
+	public void rel(PMessage msg) {
+	    if(failed)
+		return;
+	    try {
+		head(REC_REL);
+		z.adduint8(msg.type);
+		body(msg);
+	    } catch(StreamMessage.IOError e) {
+		fail(e);
+	    }
+	}
+
+	public void packet(PMessage msg) {
+	    if(failed)
+		return;
+	    int kind;
+	    switch(msg.type) {
+	    case Session.MSG_MAPDATA: kind = REC_MAPDATA; break;
+	    case Session.MSG_OBJDATA: kind = REC_OBJDATA; break;
+	    default: return;
+	    }
+	    try {
+		head(kind);
+		body(msg);
+	    } catch(StreamMessage.IOError e) {
+		fail(e);
+	    }
+	}
+
+	public void close() {
+	    try {
+		if(!failed) {
+		    head(REC_END);
+		    z.finish();
+		}
+	    } catch(StreamMessage.IOError e) {
+		fail(e);
+	    } finally {
+		out.close();
+	    }
+	}
+    }
+
+    public static class Player {
+	public final Session sess;
+	private final ZMessage in;
+	public int nrel, nmap, nobj;
+	public long bytes;
+
+	public Player(InputStream fp, String username) throws IOException {
+	    StreamMessage data = new StreamMessage(fp);
+	    try {
+		if(!Arrays.equals(data.bytes(SIG.length), SIG))
+		    throw(new IOException("not a session record"));
+	    } catch(Message.EOF e) {
+		throw(new IOException("not a session record", e));
+	    }
+	    this.in = new ZMessage(data);
+	    this.sess = new Session(new Connection(username), username);
+	}
+
+	/* Feeds the record into the session, at the given multiple of
+	 * real time, or as fast as possible if speed is zero. The
+	 * session is ticked at 60 Hz of record time. Returns the
+	 * record's length in seconds. */
+	public double play(double speed) throws InterruptedException {
+	    double st = Utils.rtime(), t = 0, ntick = 0;
+	    try {
+		while(true) {
+		    int kind = in.uint8();
+		    if(kind == REC_END)
+			break;
+		    t = in.int64() / 1e6;
+		    if(speed > 0) {
+			double now = (Utils.rtime() - st) * speed;
+			if(t > now)
+			    Thread.sleep((long)Math.ceil((t - now) * 1000 / speed));
+		    }
+		    switch(kind) {
+		    case REC_REL: {
+			int type = in.uint8();
+			PMessage msg = new PMessage(type, in.bytes(in.int32()));
+			bytes += msg.rt;
+			sess.conn.replayrel(msg);
+			nrel++;
+			break;
+		    }
+		    case REC_MAPDATA: {
+			PMessage msg = new PMessage(Session.MSG_MAPDATA, in.bytes(in.int32()));
+			bytes += msg.rt;
+			sess.conn.replaymap(msg);
+			nmap++;
+			break;
+		    }
+		    case REC_OBJDATA: {
+			PMessage msg = new PMessage(Session.MSG_OBJDATA, in.bytes(in.int32()));
+			bytes += msg.rt;
+			sess.conn.replayobj(msg);
+			nobj++;
+			break;
+		    }
+		    default:
+			throw(new Message.FormatError("unknown session record entry: " + kind));
+		    }
+		    if(t >= ntick) {
+			sess.glob.ctick();
+			ntick = t + (1.0 / 60);
+		    }
+		}
+	    } catch(Message.EOF e) {
+		/* Records of sessions that ended with the client
+		 * crashing are simply cut off. */
+	    } finally {
+		sess.conn.replayend();
+	    }
+	    return(t);
+	}
+    }
+
+    private static class Headless implements UI.Context {
+	public void setmousepos(Coord c) {}
+    }
+
+    public static void main(String[] args) throws Exception {
+	PosixArgs opt = PosixArgs.getopt(args, "fs:u:");
+	if((opt == null) || (opt.rest.length < 1)) {
+	    System.err.println("usage: haven.SessionRecord [-f] [-s SPEED] [-u USERNAME] RECORD");
+	    System.exit(1);
+	}
+	double speed = 1.0;
+	String username = "replay";
+	for(char c : opt.parsed()) {
+	    switch(c) {
+	    case 'f':
+		speed = 0;
+		break;
+	    case 's':
+		speed = Double.parseDouble(opt.arg);
+		break;
+	    case 'u':
+		username = opt.arg;
+		break;
+	    }
+	}
+	Resource.setcache(ResCache.global);
+	Player pl;
+	try(InputStream fp = new BufferedInputStream(Files.newInputStream(Utils.path(opt.rest[0])))) {
+	    pl = new Player(fp, username);
+	    RemoteUI rui = new RemoteUI(pl.sess);
+	    UI ui = new UI(new Headless(), new Coord(800, 600), rui);
+	    Throwable[] uierr = {null};
+	    Thread uith = new HackThread(() -> {
+		    try {
+			rui.run(ui);
+		    } catch(InterruptedException e) {
+		    } catch(Throwable e) {
+			uierr[0] = e;
+		    }
+	    }, "Replay UI");
+	    uith.start();
+	    double st = Utils.rtime();
+	    double len = pl.play(speed);
+	    uith.join();
+	    double el = Utils.rtime() - st;
+	    System.out.printf("%.1f s of traffic replayed in %.2f s: %d rel, %d mapdata, %d objdata, %d bytes (%.0f msg/s)\n",
+			      len, el, pl.nrel, pl.nmap, pl.nobj, pl.bytes, (pl.nrel + pl.nmap + pl.nobj) / el);
+	    if(uierr[0] != null) {
+		System.err.println("UI failed during replay:");
+		uierr[0].printStackTrace();
+		System.exit(1);
+	    }
+	}
+	System.exit(0);
+    }
+}
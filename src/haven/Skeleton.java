@@ -85,81 +85,65 @@ public class Skeleton {
     }
     
     private static float[] rotasq(float[] q, float[] axis, float angle) {
+	return(rotasq(q, 0, axis[0], axis[1], axis[2], angle));
+    }
+
+    /*
+     * The vector and quaternion functions below operate on
+     * components stored at explicit offsets, so that they can work
+     * directly on the packed pose arrays without temporaries. Every
+     * input is read before anything is written, so the destination
+     * may alias either operand.
+     */
+    private static float[] rotasq(float[] q, int qo, float ax, float ay, float az, float angle) {
 	float m = (float)Math.sin(angle / 2.0);
-	q[0] = (float)Math.cos(angle / 2.0);
-	q[1] = m * axis[0]; q[2] = m * axis[1]; q[3] = m * axis[2];
+	q[qo] = (float)Math.cos(angle / 2.0);
+	q[qo + 1] = m * ax; q[qo + 2] = m * ay; q[qo + 3] = m * az;
 	return(q);
     }
     
-    private static float[] qqmul(float[] d, float[] a, float[] b) {
-	float aw = a[0], ax = a[1], ay = a[2], az = a[3];
-	float bw = b[0], bx = b[1], by = b[2], bz = b[3];
-	d[0] = (aw * bw) - (ax * bx) - (ay * by) - (az * bz);
-	d[1] = (aw * bx) + (ax * bw) + (ay * bz) - (az * by);
-	d[2] = (aw * by) - (ax * bz) + (ay * bw) + (az * bx);
-	d[3] = (aw * bz) + (ax * by) - (ay * bx) + (az * bw);
-	return(d);
+    private static void qqmul(float[] d, int di, float[] a, int ai, float[] b, int bi) {
+	float aw = a[ai], ax = a[ai + 1], ay = a[ai + 2], az = a[ai + 3];
+	float bw = b[bi], bx = b[bi + 1], by = b[bi + 2], bz = b[bi + 3];
+	d[di    ] = (aw * bw) - (ax * bx) - (ay * by) - (az * bz);
+	d[di + 1] = (aw * bx) + (ax * bw) + (ay * bz) - (az * by);
+	d[di + 2] = (aw * by) - (ax * bz) + (ay * bw) + (az * bx);
+	d[di + 3] = (aw * bz) + (ax * by) - (ay * bx) + (az * bw);
     }
     
-    private static float[] vqrot(float[] d, float[] v, float[] q) {
-	float vx = v[0], vy = v[1], vz = v[2];
-	float qw = q[0], qx = q[1], qy = q[2], qz = q[3];
+    private static void vqrot(float[] d, int di, float[] v, int vi, float[] q, int qi) {
+	float vx = v[vi], vy = v[vi + 1], vz = v[vi + 2];
+	float qw = q[qi], qx = q[qi + 1], qy = q[qi + 2], qz = q[qi + 3];
 	/* I dearly wonder how the JIT's common-subexpression
 	 * eliminator does on these. */
-	d[0] = (qw * qw * vx) + (2 * qw * qy * vz) - (2 * qw * qz * vy) + (qx * qx * vx) +
+	d[di    ] = (qw * qw * vx) + (2 * qw * qy * vz) - (2 * qw * qz * vy) + (qx * qx * vx) +
 	    (2 * qx * qy * vy) + (2 * qx * qz * vz) - (qz * qz * vx) - (qy * qy * vx);
-	d[1] = (2 * qx * qy * vx) + (qy * qy * vy) + (2 * qy * qz * vz) + (2 * qw * qz * vx) -
+	d[di + 1] = (2 * qx * qy * vx) + (qy * qy * vy) + (2 * qy * qz * vz) + (2 * qw * qz * vx) -
 	    (qz * qz * vy) + (qw * qw * vy) - (2 * qw * qx * vz) - (qx * qx * vy);
-	d[2] = (2 * qx * qz * vx) + (2 * qy * qz * vy) + (qz * qz * vz) - (2 * qw * qy * vx) -
+	d[di + 2] = (2 * qx * qz * vx) + (2 * qy * qz * vy) + (qz * qz * vz) - (2 * qw * qy * vx) -
 	    (qy * qy * vz) + (2 * qw * qx * vy) - (qx * qx * vz) + (qw * qw * vz);
-	return(d);
-    }
-    
-    private static float[] vset(float[] d, float[] s) {
-	d[0] = s[0];
-	d[1] = s[1];
-	d[2] = s[2];
-	return(d);
-    }
-    
-    private static float[] qset(float[] d, float[] s) {
-	d[0] = s[0];
-	d[1] = s[1];
-	d[2] = s[2];
-	d[3] = s[3];
-	return(d);
-    }
-    
-    private static float[] vinv(float[] d, float[] s) {
-	d[0] = -s[0];
-	d[1] = -s[1];
-	d[2] = -s[2];
-	return(d);
     }
     
-    private static float[] qinv(float[] d, float[] s) {
-	/* Assumes |s| = 1.0 */
-	d[0] = s[0];
-	d[1] = -s[1];
-	d[2] = -s[2];
-	d[3] = -s[3];
-	return(d);
+    private static void qset(float[] d, int di, float[] s, int si) {
+	d[di    ] = s[si    ];
+	d[di + 1] = s[si + 1];
+	d[di + 2] = s[si + 2];
+	d[di + 3] = s[si + 3];
     }
     
-    private static float[] vvadd(float[] d, float[] a, float[] b) {
-	float ax = a[0], ay = a[1], az = a[2];
-	float bx = b[0], by = b[1], bz = b[2];
-	d[0] = ax + bx;
-	d[1] = ay + by;
-	d[2] = az + bz;
-	return(d);
+    private static void vvadd(float[] d, int di, float[] a, int ai, float[] b, int bi) {
+	d[di    ] = a[ai    ] + b[bi    ];
+	d[di + 1] = a[ai + 1] + b[bi + 1];
+	d[di + 2] = a[ai + 2] + b[bi + 2];
     }
     
-    private static float[] qqslerp(float[] d, float[] a, float[] b, float t) {
-	float aw = a[0], ax = a[1], ay = a[2], az = a[3];
-	float bw = b[0], bx = b[1], by = b[2], bz = b[3];
-	if((aw == bw) && (ax == bx) && (ay == by) && (az == bz))
-	    return(qset(d, a));
+    private static void qqslerp(float[] d, int di, float[] a, int ai, float[] b, int bi, float t) {
+	float aw = a[ai], ax = a[ai + 1], ay = a[ai + 2], az = a[ai + 3];
+	float bw = b[bi], bx = b[bi + 1], by = b[bi + 2], bz = b[bi + 3];
+	if((aw == bw) && (ax == bx) && (ay == by) && (az == bz)) {
+	    qset(d, di, a, ai);
+	    return;
+	}
 	float cos = (aw * bw) + (ax * bx) + (ay * by) + (az * bz);
 	if(cos < 0) {
 	    bw = -bw; bx = -bx; by = -by; bz = -bz;
@@ -176,19 +160,18 @@ public class Skeleton {
 	    d0 = (float)Math.sin((1.0f - t) * da) * nf;
 	    d1 = (float)Math.sin(t * da) * nf;
 	}
-	d[0] = (d0 * aw) + (d1 * bw);
-	d[1] = (d0 * ax) + (d1 * bx);
-	d[2] = (d0 * ay) + (d1 * by);
-	d[3] = (d0 * az) + (d1 * bz);
-	return(d);
+	d[di    ] = (d0 * aw) + (d1 * bw);
+	d[di + 1] = (d0 * ax) + (d1 * bx);
+	d[di + 2] = (d0 * ay) + (d1 * by);
+	d[di + 3] = (d0 * az) + (d1 * bz);
     }
 
     public Pose mkbindpose() {
 	Pose p = new Pose();
 	for(int i = 0; i < blist.length; i++) {
 	    Bone b = blist[i];
-	    p.lpos[i][0] = b.ipos.x; p.lpos[i][1] = b.ipos.y; p.lpos[i][2] = b.ipos.z;
-	    rotasq(p.lrot[i], b.irax.to3a(), b.irang);
+	    p.plpos[(i * 3)    ] = b.ipos.x; p.plpos[(i * 3) + 1] = b.ipos.y; p.plpos[(i * 3) + 2] = b.ipos.z;
+	    rotasq(p.plrot, i * 4, b.irax.x, b.irax.y, b.irax.z, b.irang);
 	}
 	p.gbuild();
 	return(p);
@@ -197,6 +180,12 @@ public class Skeleton {
     public class Pose implements EquipTarget {
 	public float[][] lpos, gpos;
 	public float[][] lrot, grot;
+	/* The transforms are computed in these packed arrays, where
+	 * bone i occupies [i * 3, i * 3 + 3) of the positions and
+	 * [i * 4, i * 4 + 4) of the (w, x, y, z) rotations, and are
+	 * copied out to the arrays above by gbuild(). */
+	private final float[] plpos, pgpos;
+	private final float[] plrot, pgrot;
 	private Pose from = null;
 	public int seq = 0;
 	
@@ -206,6 +195,10 @@ public class Skeleton {
 	    gpos = new float[nb][3];
 	    lrot = new float[nb][4];
 	    grot = new float[nb][4];
+	    plpos = new float[nb * 3];
+	    pgpos = new float[nb * 3];
+	    plrot = new float[nb * 4];
+	    pgrot = new float[nb * 4];
 	}
 	
 	public Pose(Pose from) {
@@ -220,55 +213,89 @@ public class Skeleton {
 	}
 	
 	public void reset() {
-	    for(int i = 0; i < blist.length; i++) {
-		vset(lpos[i], from.lpos[i]);
-		qset(lrot[i], from.lrot[i]);
-	    }
+	    System.arraycopy(from.plpos, 0, plpos, 0, plpos.length);
+	    System.arraycopy(from.plrot, 0, plrot, 0, plrot.length);
 	}
 
 	public void gbuild() {
 	    int nb = blist.length;
 	    for(int i = 0; i < nb; i++) {
 		Bone b = blist[i];
+		int po = i * 3, ro = i * 4;
 		if(b.parent == null) {
-		    gpos[i][0] = lpos[i][0];
-		    gpos[i][1] = lpos[i][1];
-		    gpos[i][2] = lpos[i][2];
-		    grot[i][0] = lrot[i][0];
-		    grot[i][1] = lrot[i][1];
-		    grot[i][2] = lrot[i][2];
-		    grot[i][3] = lrot[i][3];
+		    pgpos[po    ] = plpos[po    ];
+		    pgpos[po + 1] = plpos[po + 1];
+		    pgpos[po + 2] = plpos[po + 2];
+		    qset(pgrot, ro, plrot, ro);
 		} else {
 		    int pi = b.parent.idx;
-		    qqmul(grot[i], grot[pi], lrot[i]);
-		    vqrot(gpos[i], lpos[i], grot[pi]);
-		    vvadd(gpos[i], gpos[i], gpos[pi]);
+		    qqmul(pgrot, ro, pgrot, pi * 4, plrot, ro);
+		    vqrot(pgpos, po, plpos, po, pgrot, pi * 4);
+		    vvadd(pgpos, po, pgpos, po, pgpos, pi * 3);
 		}
 	    }
+	    unpack();
+	    for(int i = 0; i < nb; i++) {
+		System.arraycopy(pgpos, i * 3, gpos[i], 0, 3);
+		System.arraycopy(pgrot, i * 4, grot[i], 0, 4);
+	    }
 	    seq++;
 	}
-	
-	public void blend(Pose o, float d) {
+
+	/* Copy the local transforms between the packed and the
+	 * public arrays, around mods that work on the latter. */
+	void unpack() {
+	    for(int i = 0; i < blist.length; i++) {
+		System.arraycopy(plpos, i * 3, lpos[i], 0, 3);
+		System.arraycopy(plrot, i * 4, lrot[i], 0, 4);
+	    }
+	}
+
+	void pack() {
 	    for(int i = 0; i < blist.length; i++) {
-		qqslerp(lrot[i], lrot[i], o.lrot[i], d);
-		lpos[i][0] = lpos[i][0] + ((o.lpos[i][0] - lpos[i][0]) * d);
-		lpos[i][1] = lpos[i][1] + ((o.lpos[i][1] - lpos[i][1]) * d);
-		lpos[i][2] = lpos[i][2] + ((o.lpos[i][2] - lpos[i][2]) * d);
+		System.arraycopy(lpos[i], 0, plpos, i * 3, 3);
+		System.arraycopy(lrot[i], 0, plrot, i * 4, 4);
 	    }
 	}
 	
+	public void blend(Pose o, float d) {
+	    for(int i = 0; i < blist.length; i++)
+		qqslerp(plrot, i * 4, plrot, i * 4, o.plrot, i * 4, d);
+	    for(int i = 0; i < plpos.length; i++)
+		plpos[i] = plpos[i] + ((o.plpos[i] - plpos[i]) * d);
+	}
+
+	/* Computes the transform of a bone relative to its bind pose,
+	 * storing the rotation in d[0..3] and the translation in
+	 * d[4..6]. */
+	private void bindoff(int bone, float[] d) {
+	    int po = bone * 3, ro = bone * 4;
+	    float[] brot = bindpose.pgrot, bpos = bindpose.pgpos;
+	    float aw = pgrot[ro], ax = pgrot[ro + 1], ay = pgrot[ro + 2], az = pgrot[ro + 3];
+	    float bw = brot[ro], bx = -brot[ro + 1], by = -brot[ro + 2], bz = -brot[ro + 3];
+	    d[0] = (aw * bw) - (ax * bx) - (ay * by) - (az * bz);
+	    d[1] = (aw * bx) + (ax * bw) + (ay * bz) - (az * by);
+	    d[2] = (aw * by) - (ax * bz) + (ay * bw) + (az * bx);
+	    d[3] = (aw * bz) + (ax * by) - (ay * bx) + (az * bw);
+	    vqrot(d, 4, bpos, po, d, 0);
+	    d[4] = pgpos[po    ] - d[4];
+	    d[5] = pgpos[po + 1] - d[5];
+	    d[6] = pgpos[po + 2] - d[6];
+	}
+	
 	/* XXX: It seems the return type of these should be something more generic. */
 	public Supplier<Pipe.Op> bonetrans(int bone) {
+	    int po = bone * 3, ro = bone * 4;
 	    return(new Supplier<Pipe.Op>() {
 		    int cseq = -1;
 		    Location cur;
 
 		    public Pipe.Op get() {
 			if(cseq != seq) {
-			    Matrix4f xf = Transform.makexlate(new Matrix4f(), new Coord3f(gpos[bone][0], gpos[bone][1], gpos[bone][2]));
-			    if(grot[bone][0] < 0.999999) {
-				float ang = (float)(Math.acos(grot[bone][0]) * 2.0);
-				xf = xf.mul1(Transform.makerot(new Matrix4f(), new Coord3f(grot[bone][1], grot[bone][2], grot[bone][3]).norm(), ang));
+			    Matrix4f xf = Transform.makexlate(new Matrix4f(), new Coord3f(pgpos[po], pgpos[po + 1], pgpos[po + 2]));
+			    if(pgrot[ro] < 0.999999) {
+				float ang = (float)(Math.acos(pgrot[ro]) * 2.0);
+				xf = xf.mul1(Transform.makerot(new Matrix4f(), new Coord3f(pgrot[ro + 1], pgrot[ro + 2], pgrot[ro + 3]).norm(), ang));
 			    }
 			    cur = new Location(xf);
 			    cseq = seq;
@@ -289,16 +316,15 @@ public class Skeleton {
 	    return(new Supplier<Pipe.Op>() {
 		    int cseq = -1;
 		    Location cur;
-		    float[] pos = new float[3], rot = new float[4];
+		    float[] off = new float[7];
 
 		    public Pipe.Op get() {
 			if(cseq != seq) {
-			    rot = qqmul(rot, grot[bone], qinv(rot, bindpose.grot[bone]));
-			    pos = vvadd(pos, gpos[bone], vqrot(pos, vinv(pos, bindpose.gpos[bone]), rot));
-			    Matrix4f xf = Transform.makexlate(new Matrix4f(), new Coord3f(pos[0], pos[1], pos[2]));
-			    if(rot[0] < 0.999999) {
-				float ang = (float)(Math.acos(rot[0]) * 2.0);
-				xf = xf.mul1(Transform.makerot(new Matrix4f(), new Coord3f(rot[1], rot[2], rot[3]).norm(), ang));
+			    bindoff(bone, off);
+			    Matrix4f xf = Transform.makexlate(new Matrix4f(), new Coord3f(off[4], off[5], off[6]));
+			    if(off[0] < 0.999999) {
+				float ang = (float)(Math.acos(off[0]) * 2.0);
+				xf = xf.mul1(Transform.makerot(new Matrix4f(), new Coord3f(off[1], off[2], off[3]).norm(), ang));
 			    }
 			    cur = new Location(xf);
 			    cseq = seq;
@@ -316,17 +342,17 @@ public class Skeleton {
 	    
 	    public BoneAlign(Coord3f ref, Bone orig, Bone tgt) {
 		this.ref = ref;
-		this.orig = orig.idx;
-		this.tgt = tgt.idx;
+		this.orig = orig.idx * 3;
+		this.tgt = tgt.idx * 3;
 	    }
 		
 	    public Location get() {
 		if(cseq != seq) {
-		    Coord3f cur = new Coord3f(gpos[tgt][0] - gpos[orig][0], gpos[tgt][1] - gpos[orig][1], gpos[tgt][2] - gpos[orig][2]).norm();
+		    Coord3f cur = new Coord3f(pgpos[tgt] - pgpos[orig], pgpos[tgt + 1] - pgpos[orig + 1], pgpos[tgt + 2] - pgpos[orig + 2]).norm();
 		    Coord3f axis = cur.cmul(ref).norm();
 		    float ang = (float)Math.acos(cur.dmul(ref));
 		    // Debug.dump(cur, ref, axis, ang);
-		    this.cur = new Location(Transform.makexlate(new Matrix4f(), new Coord3f(gpos[orig][0], gpos[orig][1], gpos[orig][2]))
+		    this.cur = new Location(Transform.makexlate(new Matrix4f(), new Coord3f(pgpos[orig], pgpos[orig + 1], pgpos[orig + 2]))
 				       .mul1(Transform.makerot(new Matrix4f(), axis, -ang)));
 		    cseq = seq;
 		}
@@ -335,16 +361,16 @@ public class Skeleton {
 	}
 
 	public void boneoff(int bone, float[] offtrans) {
-	    /* It would be nice if these "new float"s get
-	     * stack-allocated. */
-	    float[] rot = new float[4], xlate = new float[3];
-	    rot = qqmul(rot, grot[bone], qinv(rot, bindpose.grot[bone]));
-	    xlate = vvadd(xlate, gpos[bone], vqrot(xlate, vinv(xlate, bindpose.gpos[bone]), rot));
+	    /* The offset is computed into the head of offtrans
+	     * itself, which is then overwritten below. */
+	    bindoff(bone, offtrans);
+	    float rw = offtrans[0], rx = offtrans[1], ry = offtrans[2], rz = offtrans[3];
+	    float tx = offtrans[4], ty = offtrans[5], tz = offtrans[6];
 	    offtrans[3] = 0; offtrans[7] = 0; offtrans[11] = 0; offtrans[15] = 1;
-	    offtrans[12] = xlate[0]; offtrans[13] = xlate[1]; offtrans[14] = xlate[2];
+	    offtrans[12] = tx; offtrans[13] = ty; offtrans[14] = tz;
 	    /* I must admit I don't /quite/ understand why the
 	     * rotation needs to be inverted... */
-	    float w = -rot[0], x = rot[1], y = rot[2], z = rot[3];
+	    float w = -rw, x = rx, y = ry, z = rz;
 	    float xw = x * w * 2, xx = x * x * 2, xy = x * y * 2, xz = x * z * 2;
 	    float yw = y * w * 2, yy = y * y * 2, yz = y * z * 2;
 	    float zw = z * w * 2, zz = z * z * 2;
@@ -395,10 +421,11 @@ public class Skeleton {
 			FillBuffer ret = env.fillbuf(tgt);
 			java.nio.ByteBuffer buf = ret.push();
 			for(int i = 0; i < bperm.length; i++) {
-			    int bi = bperm[i], pi = blist[bi].parent.idx;
-			    buf.putFloat(gpos[pi][0]).putFloat(gpos[pi][1]).putFloat(gpos[pi][2]);
+			    int bi = bperm[i], pi = blist[bi].parent.idx * 3;
+			    bi *= 3;
+			    buf.putFloat(pgpos[pi]).putFloat(pgpos[pi + 1]).putFloat(pgpos[pi + 2]);
 			    buf.put((byte)255).put((byte)0).put((byte)0).put((byte)255);
-			    buf.putFloat(gpos[bi][0]).putFloat(gpos[bi][1]).putFloat(gpos[bi][2]);
+			    buf.putFloat(pgpos[bi]).putFloat(pgpos[bi + 1]).putFloat(pgpos[bi + 2]);
 			    buf.put((byte)0).put((byte)255).put((byte)0).put((byte)255);
 			}
 			return(ret);
@@ -427,6 +454,10 @@ public class Skeleton {
     public abstract class PoseMod {
 	public final ModOwner owner;
 	public float[][] lpos, lrot;
+	/* Packed like the arrays of Pose, for the mods that keep their
+	 * state there instead, which override papply(). */
+	final float[] plpos, plrot;
+	private final float[] qbuf = new float[4];
 	protected final Collection<FxTrack.EventListener> cbl = new ArrayList<FxTrack.EventListener>(0);
 
 	public PoseMod(ModOwner owner) {
@@ -436,6 +467,9 @@ public class Skeleton {
 	    lrot = new float[nb][4];
 	    for(int i = 0; i < nb; i++)
 		lrot[i][0] = 1;
+	    plpos = new float[nb * 3];
+	    plrot = new float[nb * 4];
+	    preset();
 	}
 
 	public Skeleton skel() {return(Skeleton.this);}
@@ -445,19 +479,34 @@ public class Skeleton {
 		lpos[i][0] = 0; lpos[i][1] = 0; lpos[i][2] = 0;
 		lrot[i][0] = 1; lrot[i][1] = 0; lrot[i][2] = 0; lrot[i][3] = 0;
 	    }
+	    preset();
+	}
+
+	void preset() {
+	    Arrays.fill(plpos, 0);
+	    Arrays.fill(plrot, 0);
+	    for(int i = 0; i < plrot.length; i += 4)
+		plrot[i] = 1;
 	}
 	
 	public void rot(int bone, float ang, float ax, float ay, float az) {
-	    float[] x = {ax, ay, az};
-	    qqmul(lrot[bone], lrot[bone], rotasq(new float[4], x, ang));
+	    qqmul(lrot[bone], 0, lrot[bone], 0, rotasq(qbuf, 0, ax, ay, az, ang), 0);
 	}
 
 	public void apply(Pose p) {
 	    for(int i = 0; i < blist.length; i++) {
-		vvadd(p.lpos[i], p.lpos[i], lpos[i]);
-		qqmul(p.lrot[i], p.lrot[i], lrot[i]);
+		vvadd(p.lpos[i], 0, p.lpos[i], 0, lpos[i], 0);
+		qqmul(p.lrot[i], 0, p.lrot[i], 0, lrot[i], 0);
 	    }
 	}
+
+	/* Applies the mod to the packed arrays of p, as done when
+	 * composing poses. */
+	void papply(Pose p) {
+	    p.unpack();
+	    apply(p);
+	    p.pack();
+	}
 	
 	public boolean tick(float dt) {
 	    return(false);
@@ -485,6 +534,7 @@ public class Skeleton {
 
     public PoseMod nilmod() {
 	return(new PoseMod(ModOwner.nil) {
+		void papply(Pose p) {}
 		public boolean stat() {return(true);}
 		public boolean done() {return(false);}
 		public String toString() {return("#<nil-mod>");}
@@ -506,6 +556,11 @@ public class Skeleton {
 			m.apply(p);
 		}
 
+		void papply(Pose p) {
+		    for(PoseMod m : mods)
+			m.papply(p);
+		}
+
 		public boolean tick(float dt) {
 		    boolean ret = false;
 		    for(PoseMod m : mods) {
@@ -670,19 +725,35 @@ public class Skeleton {
 	}
 
 	
+	public void apply(Pose p) {
+	    for(int i = 0; i < blist.length; i++) {
+		vvadd(p.lpos[i], 0, p.lpos[i], 0, plpos, i * 3);
+		qqmul(p.lrot[i], 0, p.lrot[i], 0, plrot, i * 4);
+	    }
+	}
+
+	/* Tracks are sampled into the packed arrays only, so the
+	 * public ones of a TrackMod stay at their identity. */
+	void papply(Pose p) {
+	    for(int i = 0; i < plpos.length; i++)
+		p.plpos[i] += plpos[i];
+	    for(int i = 0; i < plrot.length; i += 4)
+		qqmul(p.plrot, i, p.plrot, i, plrot, i);
+	}
+
 	public void aupdate(float time) {
 	    if(time > len)
 		time = len;
-	    reset();
+	    preset();
 	    for(int i = 0; i < tracks.length; i++) {
 		Track t = tracks[i];
 		if((t == null) || (t.frames.length == 0))
 		    continue;
 		if(t.frames.length == 1) {
-		    qset(lrot[i], t.frames[0].rot);
-		    lpos[i][0] = t.frames[0].trans[0] * scale;
-		    lpos[i][1] = t.frames[0].trans[1] * scale;
-		    lpos[i][2] = t.frames[0].trans[2] * scale;
+		    qset(plrot, i * 4, t.frames[0].rot, 0);
+		    plpos[(i * 3)    ] = t.frames[0].trans[0] * scale;
+		    plpos[(i * 3) + 1] = t.frames[0].trans[1] * scale;
+		    plpos[(i * 3) + 2] = t.frames[0].trans[2] * scale;
 		} else {
 		    Track.Frame cf, nf;
 		    float ct, nt;
@@ -710,10 +781,10 @@ public class Skeleton {
 			d = 0;
 		    else
 			d = (time - ct) / (nt - ct);
-		    qqslerp(lrot[i], cf.rot, nf.rot, d);
-		    lpos[i][0] = (cf.trans[0] + ((nf.trans[0] - cf.trans[0]) * d)) * scale;
-		    lpos[i][1] = (cf.trans[1] + ((nf.trans[1] - cf.trans[1]) * d)) * scale;
-		    lpos[i][2] = (cf.trans[2] + ((nf.trans[2] - cf.trans[2]) * d)) * scale;
+		    qqslerp(plrot, i * 4, cf.rot, 0, nf.rot, 0, d);
+		    plpos[(i * 3)    ] = (cf.trans[0] + ((nf.trans[0] - cf.trans[0]) * d)) * scale;
+		    plpos[(i * 3) + 1] = (cf.trans[1] + ((nf.trans[1] - cf.trans[1]) * d)) * scale;
+		    plpos[(i * 3) + 2] = (cf.trans[2] + ((nf.trans[2] - cf.trans[2]) * d)) * scale;
 		}
 	    }
 	}
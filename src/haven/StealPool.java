@@ -0,0 +1,216 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/*
+ * A small work-stealing thread pool. Each worker owns a deque;
+ * tasks submitted from a worker go onto its own deque, and tasks
+ * submitted from elsewhere are distributed round-robin. Idle workers
+ * steal from the far end of the other workers' deques. Workers are
+ * started on demand, up to the given maximum, and exit after having
+ * been idle for a while.
+ */
+public class StealPool {
+    public final String name;
+    public final int maxworkers;
+    private final ThreadGroup tg;
+    private final List<Worker> workers = new ArrayList<>();
+    private final AtomicInteger pending = new AtomicInteger(0);
+    private final AtomicLong ndone = new AtomicLong(0), nstolen = new AtomicLong(0);
+    private volatile Worker[] active = new Worker[0];
+    private volatile int idle = 0;
+    private int rr = 0, seq = 0;
+
+    public StealPool(ThreadGroup tg, String name, int maxworkers) {
+	this.tg = tg;
+	this.name = name;
+	this.maxworkers = maxworkers;
+    }
+
+    private class Worker extends HackThread {
+	private final ArrayDeque<Runnable> dq = new ArrayDeque<>();
+
+	private Worker() {
+	    super(tg, null, name + " #" + seq++);
+	    setDaemon(true);
+	}
+
+	private StealPool outer() {
+	    return(StealPool.this);
+	}
+
+	private void push(Runnable task) {
+	    synchronized(dq) {
+		dq.addFirst(task);
+	    }
+	}
+
+	private Runnable take() {
+	    synchronized(dq) {
+		return(dq.pollFirst());
+	    }
+	}
+
+	private boolean empty() {
+	    synchronized(dq) {
+		return(dq.isEmpty());
+	    }
+	}
+
+	private Runnable steal() {
+	    synchronized(dq) {
+		return(dq.pollLast());
+	    }
+	}
+
+	private Runnable next() {
+	    Runnable ret = take();
+	    if(ret != null)
+		return(ret);
+	    Worker[] victims = active;
+	    int o = (victims.length > 0) ? (int)(Thread.currentThread().getId() % victims.length) : 0;
+	    for(int i = 0; i < victims.length; i++) {
+		Worker v = victims[(i + o) % victims.length];
+		if((v != this) && ((ret = v.steal()) != null)) {
+		    nstolen.getAndIncrement();
+		    return(ret);
+		}
+	    }
+	    return(null);
+	}
+
+	public void run() {
+	    try {
+		while(true) {
+		    Runnable task = next();
+		    if(task == null) {
+			synchronized(StealPool.this) {
+			    idle++;
+			    try {
+				if(pending.get() > 0) {
+				    /* Queued work that could not be had is
+				     * most likely just being pushed or taken
+				     * by another worker, so only back off
+				     * briefly rather than spin. */
+				    StealPool.this.wait(1);
+				    continue;
+				}
+				long start = System.currentTimeMillis();
+				StealPool.this.wait(10000);
+				/* Work is only pushed onto this worker's
+				 * deque by itself, or under the pool lock
+				 * held here, so it cannot be stranded by
+				 * exiting once it is empty. */
+				if((pending.get() == 0) && (System.currentTimeMillis() - start >= 10000) && empty()) {
+				    remove(this);
+				    return;
+				}
+			    } finally {
+				idle--;
+			    }
+			}
+			continue;
+		    }
+		    pending.getAndDecrement();
+		    try {
+			task.run();
+		    } catch(Throwable t) {
+			new Warning(t, "uncaught exception in " + getName()).issue();
+		    }
+		    ndone.getAndIncrement();
+		}
+	    } catch(InterruptedException e) {
+		synchronized(StealPool.this) {
+		    remove(this);
+		}
+	    }
+	}
+    }
+
+    private void remove(Worker w) {
+	workers.remove(w);
+	active = workers.toArray(new Worker[0]);
+	/* Should not normally happen, but never let work get
+	 * stranded on a dead worker. */
+	Runnable task;
+	while((task = w.take()) != null) {
+	    pending.getAndDecrement();
+	    submit0(task);
+	}
+    }
+
+    private Worker start() {
+	Worker n = new Worker();
+	workers.add(n);
+	active = workers.toArray(new Worker[0]);
+	n.start();
+	return(n);
+    }
+
+    private void submit0(Runnable task) {
+	Worker tgt;
+	if(workers.isEmpty() || ((idle == 0) && (workers.size() < maxworkers)))
+	    tgt = start();
+	else
+	    tgt = workers.get(rr++ % workers.size());
+	tgt.push(task);
+	pending.getAndIncrement();
+	if(idle > 0)
+	    notify();
+    }
+
+    public void submit(Runnable task) {
+	Thread th = Thread.currentThread();
+	if((th instanceof Worker) && (((Worker)th).outer() == this)) {
+	    ((Worker)th).push(task);
+	    pending.getAndIncrement();
+	    if(idle > 0) {
+		synchronized(this) {
+		    notify();
+		}
+	    }
+	} else {
+	    synchronized(this) {
+		submit0(task);
+	    }
+	}
+    }
+
+    public int pending() {
+	return(pending.get());
+    }
+
+    public String stats() {
+	synchronized(this) {
+	    return(String.format("%d queued, %d/%d workers, %d idle, %d done, %d stolen",
+				 pending.get(), workers.size(), maxworkers, idle, ndone.get(), nstolen.get()));
+	}
+    }
+}
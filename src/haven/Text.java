@@ -170,6 +170,12 @@ public class Text implements Disposable {
 	    return(this);
 	}
 
+	/* For drawing plain strings directly, without making Lines
+	 * and textures of them; see GlyphAtlas. */
+	public GlyphAtlas atlas() {
+	    return(GlyphAtlas.get(font, aa));
+	}
+
 	public int height() {
 	    /* XXX? The only font which seems to have leading > 0 is
 	     * the Moderne Fraktur font, for which the leading is
@@ -109,6 +109,7 @@ public class TextEntry extends Widget implements ReadLine.Owner {
 	    tcache.tex().dispose();
 	    tcache = null;
 	}
+	repaint();
     }
 
     public void draw(GOut g) {
@@ -174,6 +174,23 @@ public class UI {
 			sess.close();
 		    }
 		});
+	    setcmd("uicache", new Command() {
+		    public void run(Console cons, String[] args) {
+			if(args.length < 2) {
+			    cons.out.printf("%s, %d renders, %d reuses\n", WidgetCache.enabled ? "on" : "off", WidgetCache.renders, WidgetCache.reuses);
+			} else if(args[1].equals("dbg")) {
+			    WidgetCache.debug = !WidgetCache.debug;
+			} else {
+			    WidgetCache.enabled = Utils.parsebool(args[1]);
+			}
+		    }
+		});
+	    setcmd("connstats", new Command() {
+		    public void run(Console cons, String[] args) {
+			if(sess != null)
+			    cons.out.println(sess.conn.stats());
+		    }
+		});
 	    setcmd("gl", new Command() {
 		    <T> void merd(GSettings.Setting<T> var, String val) {
 			setgprefs(gprefs.update(null, var, var.parse(val)));
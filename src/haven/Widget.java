@@ -53,6 +53,7 @@ public class Widget {
     public Widget focused;
     public Indir<Resource> cursor = null;
     public Object tooltip = null;
+    public WidgetCache rcache = null;
     public KeyMatch gkey;
     public KeyBinding kb_gkey;
     static Map<String, Factory> types = new TreeMap<String, Factory>();
@@ -459,6 +460,7 @@ public class Widget {
 		parent.lchild = this;
 	    parent.child = this;
 	}
+	repaint();
     }
     
     public void linkfirst() {
@@ -477,6 +479,7 @@ public class Widget {
 		parent.child = this;
 	    parent.lchild = this;
 	}
+	repaint();
     }
 	
     public void unlink() {
@@ -535,6 +538,10 @@ public class Widget {
     }
 
     public void dispose() {
+	if(rcache != null) {
+	    rcache.dispose();
+	    rcache = null;
+	}
 	synchronized (boundListeners) {boundListeners.clear();}
 	synchronized (focusListeners) {focusListeners.clear();}
 	synchronized (destroyListeners) {destroyListeners.clear();}
@@ -564,6 +571,7 @@ public class Widget {
 	if(canfocus)
 	    setcanfocus(false);
 	if(parent != null) {
+	    repaint();
 	    unlink();
 	    parent.cdestroy(this);
 	    parent = null;
@@ -762,6 +770,7 @@ public class Widget {
     }
 	
     public void wdgmsg(String msg, Object... args) {
+	repaint();
 	wdgmsg(this, msg, args);
     }
 	
@@ -777,6 +786,8 @@ public class Widget {
 	 * classes, but alas, this is Java. */
 	anims.addAll(nanims);
 	nanims.clear();
+	if(!anims.isEmpty())
+	    repaint();
 	for(Iterator<Anim> i = anims.iterator(); i.hasNext();) {
 	    Anim anim = i.next();
 	    if(anim.tick(dt))
@@ -808,7 +819,33 @@ public class Widget {
 		g2 = g.reclip(cc, wdg.sz);
 	    else
 		g2 = g.reclipl(cc, wdg.sz);
-	    wdg.draw(g2);
+	    if(wdg.rcache != null)
+		wdg.rcache.draw(g2, wdg);
+	    else
+		wdg.draw(g2);
+	}
+    }
+
+    protected WidgetCache mkcache() {
+	return(new WidgetCache());
+    }
+
+    /* Opts this widget into retained rendering; see WidgetCache. */
+    public void setcached(boolean cached) {
+	if(cached && (rcache == null)) {
+	    rcache = mkcache();
+	} else if(!cached && (rcache != null)) {
+	    rcache.dispose();
+	    rcache = null;
+	}
+    }
+
+    /* Tells caching ancestors that this widget may look different
+     * from when they last drew it. */
+    public void repaint() {
+	for(Widget w = this; w != null; w = w.parent) {
+	    if(w.rcache != null)
+		w.rcache.dirty = true;
 	}
     }
     
@@ -858,6 +895,8 @@ public class Widget {
 	public boolean dispatch(Widget w) {
 	    Widget phandling = handling;
 	    handling = w;
+	    if(w.rcache != null)
+		w.rcache.event(w, this);
 	    try {
 		propagate = true;
 		if(w.handle(this))
@@ -967,6 +1006,7 @@ public class Widget {
 
 	protected boolean shandle(Widget w) {
 	    w.uimsg(msg, args);
+	    w.repaint();
 	    return(true);
 	}
     }
@@ -1522,12 +1562,14 @@ public class Widget {
     
     public void move(Coord c) {
 	this.c = c;
+	repaint();
     }
 
     public void resize(Coord sz) {
 	if(Utils.eq(this.sz, sz))
 	    return;
 	this.sz = sz;
+	repaint();
 	for(Widget ch = child; ch != null; ch = ch.next)
 	    ch.presize();
 	if(parent != null)
@@ -2012,6 +2054,7 @@ public class Widget {
     }
 
     public void hide() {
+	repaint();
 	visible = false;
 	if(parent != null)
 	    parent.delfocusable(this);
@@ -2019,6 +2062,7 @@ public class Widget {
 
     public void show() {
 	visible = true;
+	repaint();
 	if(parent != null)
 	    parent.newfocusable(this);
     }
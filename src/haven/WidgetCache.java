@@ -0,0 +1,147 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven;
+
+import java.awt.Color;
+import haven.render.*;
+
+/*
+ * Retained rendering of a widget subtree. A widget with a cache (see
+ * Widget.setcached) is drawn into an offscreen texture, which is
+ * then reused on later frames until something in the subtree calls
+ * Widget.repaint(). Input reaching the subtree, messages to and from
+ * it and changes to its structure do so by themselves. Since plenty
+ * of widgets change their looks without saying so (timers, meters,
+ * images that were still loading), a cache is also refreshed once it
+ * is older than maxage.
+ */
+public class WidgetCache implements Disposable {
+    public static final Config.Variable<Double> maxage = Config.Variable.propf("haven.uicache.maxage", 0.25);
+    public static boolean enabled = true, debug = false;
+    private static final Color dbgcol = new Color(255, 0, 0, 64);
+    public static int renders, reuses;
+    public boolean dirty = true;
+    private boolean inside = false, hovered = false;
+    private double rtime;
+    private TexRaw buf = null;
+    private Pipe.Op basic;
+
+    public boolean stale() {
+	return(!enabled || dirty || (Utils.rtime() - rtime > maxage.get()));
+    }
+
+    public void rendered() {
+	dirty = false;
+	rtime = Utils.rtime();
+	renders++;
+    }
+
+    /* Called for every event dispatched to the widget. */
+    public void event(Widget wdg, Widget.Event ev) {
+	if((ev instanceof Widget.TickEvent) || (ev instanceof Widget.GTickEvent) ||
+	   (ev instanceof Widget.TooltipQuery) || (ev instanceof Widget.QueryEvent))
+	    return;
+	if(ev instanceof Widget.MouseHoverEvent) {
+	    /* Sent every frame, so only changes in hover state count. */
+	    Widget.MouseHoverEvent hev = (Widget.MouseHoverEvent)ev;
+	    boolean h = hev.hovering && hev.c.isect(Coord.z, wdg.sz);
+	    if(h != hovered)
+		dirty = true;
+	    hovered = h;
+	    return;
+	}
+	if(ev instanceof Widget.PointerEvent) {
+	    boolean in = ((Widget.PointerEvent)ev).c.isect(Coord.z, wdg.sz);
+	    if(ev instanceof Widget.MouseMoveEvent) {
+		/* Leaving must also clear hover highlights. */
+		if(in || inside)
+		    dirty = true;
+		inside = in;
+	    } else if(in) {
+		dirty = true;
+	    }
+	    return;
+	}
+	dirty = true;
+    }
+
+    private Pipe.Op basic(Coord sz) {
+	if((buf == null) || !Utils.eq(sz, buf.back.tex.sz())) {
+	    if(buf != null)
+		buf.dispose();
+	    buf = new TexRaw(new Texture2D.Sampler2D(new Texture2D(sz, DataBuffer.Usage.STATIC, new VectorFormat(4, NumberFormat.UNORM8), null)), true);
+	    Area area = Area.sized(sz);
+	    basic = Pipe.Op.compose(new FragColor<>(buf.back.tex.image(0)), DepthBuffer.slot.nil, Window.cblend,
+				    new States.Viewport(area), new Ortho2D(area));
+	    dirty = true;
+	}
+	return(basic);
+    }
+
+    public void draw(GOut og, Widget wdg) {
+	if(!enabled || (wdg.sz.x <= 0) || (wdg.sz.y <= 0)) {
+	    wdg.draw(og);
+	    return;
+	}
+	Pipe.Op basic = basic(wdg.sz);
+	if(stale()) {
+	    GOut g = new GOut(og.out, og.basicstate().prep(basic), wdg.sz);
+	    g.out.clear(g.state(), FragColor.fragcol, FColor.BLACK_T);
+	    wdg.draw(g);
+	    rendered();
+	} else {
+	    reuses++;
+	}
+	og.image(buf, Coord.z);
+	drawdebug(og, wdg.sz);
+    }
+
+    /* Flashes the area of caches that were just redrawn. */
+    public void drawdebug(GOut g, Coord sz) {
+	if(debug && (Utils.rtime() - rtime < 0.2)) {
+	    g.chcolor(dbgcol);
+	    g.frect(Coord.z, sz);
+	    g.chcolor();
+	}
+    }
+
+    public void dispose() {
+	if(buf != null) {
+	    buf.dispose();
+	    buf = null;
+	}
+    }
+
+    /* For widgets that already draw themselves through a buffer of
+     * their own, like Window, and only need to know when to
+     * refresh it. */
+    public static class Managed extends WidgetCache {
+	public void draw(GOut og, Widget wdg) {
+	    wdg.draw(og);
+	}
+    }
+}
@@ -440,14 +440,28 @@ public class Window extends Widget {
 	    g.image(buf, Coord.z);
     }
 
+    protected WidgetCache mkcache() {
+	return(new WidgetCache.Managed());
+    }
+
     public void draw(GOut og) {
 	if(animst != "dest") {
-	    GOut g = new GOut(og.out, og.basicstate().prep(gbasic()), this.sz);
-	    g.out.clear(g.state(), FragColor.fragcol, FColor.BLACK_T);
-	    drawbuf(g);
+	    boolean fresh = (gbuf == null) || !Utils.eq(sz, gbuf.back.tex.sz());
+	    if(fresh || (rcache == null) || rcache.stale()) {
+		GOut g = new GOut(og.out, og.basicstate().prep(gbasic()), this.sz);
+		g.out.clear(g.state(), FragColor.fragcol, FColor.BLACK_T);
+		drawbuf(g);
+		if(rcache != null)
+		    rcache.rendered();
+	    } else {
+		WidgetCache.reuses++;
+	    }
 	}
-	if(gbuf != null)
+	if(gbuf != null) {
 	    drawfin(og, gbuf);
+	    if(rcache != null)
+		rcache.drawdebug(og, sz);
+	}
     }
 
     public Coord contentsz() {
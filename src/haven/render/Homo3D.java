@@ -210,4 +210,50 @@ public class Homo3D {
 	HomoCoord4f homo = obj2clip(objc, state);
 	return homo.clipped() ? null : homo.toview(view).round2();
     }
+
+    /* Like obj2sc, but for many points at once. The camera and
+     * projection transforms are combined only once for runs of
+     * points that share them, which is normally all of them, and no
+     * intermediate coordinates are allocated. Clipped points are
+     * given null. */
+    public static void obj2sc(Coord3f[] objc, Pipe[] states, int n, Area view, Coord[] dst) {
+	Camera lcam = null;
+	Projection lprj = null;
+	float[] pv = null;
+	float vx = view.ul.x, vy = view.ul.y, vw = view.br.x - view.ul.x, vh = view.br.y - view.ul.y;
+	for(int i = 0; i < n; i++) {
+	    Pipe state = states[i];
+	    Camera s_cam = state.get(cam);
+	    Projection s_prj = state.get(prj);
+	    if((pv == null) || (s_cam != lcam) || (s_prj != lprj)) {
+		Matrix4f m = Matrix4f.id;
+		if(s_cam != null) m = s_cam.fin(Matrix4f.id);
+		if(s_prj != null) m = s_prj.fin(Matrix4f.id).mul(m);
+		pv = m.m;
+		lcam = s_cam; lprj = s_prj;
+	    }
+	    Coord3f c = objc[i];
+	    float x = c.x, y = c.y, z = c.z, w = 1;
+	    Location.Chain s_loc = state.get(loc);
+	    if(s_loc != null) {
+		float[] l = s_loc.fin(Matrix4f.id).m;
+		float lx = (l[0] * x) + (l[4] * y) + (l[ 8] * z) + l[12];
+		float ly = (l[1] * x) + (l[5] * y) + (l[ 9] * z) + l[13];
+		float lz = (l[2] * x) + (l[6] * y) + (l[10] * z) + l[14];
+		float lw = (l[3] * x) + (l[7] * y) + (l[11] * z) + l[15];
+		x = lx; y = ly; z = lz; w = lw;
+	    }
+	    float cx = (pv[0] * x) + (pv[4] * y) + (pv[ 8] * z) + (pv[12] * w);
+	    float cy = (pv[1] * x) + (pv[5] * y) + (pv[ 9] * z) + (pv[13] * w);
+	    float cz = (pv[2] * x) + (pv[6] * y) + (pv[10] * z) + (pv[14] * w);
+	    float cw = (pv[3] * x) + (pv[7] * y) + (pv[11] * z) + (pv[15] * w);
+	    if((cw <= 0) || (cx < -cw) || (cx > cw) || (cy < -cw) || (cy > cw) || (cz < -cw) || (cz > cw)) {
+		dst[i] = null;
+		continue;
+	    }
+	    float f = 1.0f / cw;
+	    dst[i] = new Coord((int)Math.round(vx + (((( cx * f) + 1) * 0.5f) * vw)),
+			       (int)Math.round(vy + ((((-cy * f) + 1) * 0.5f) * vh)));
+	}
+    }
 }
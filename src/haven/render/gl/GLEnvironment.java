@@ -37,6 +37,7 @@ import static haven.render.DataBuffer.Usage.*;
 public abstract class GLEnvironment implements Environment {
     public static final boolean debuglog = false, labels = false;
     public final Caps caps;
+    final ProgramCache pcache;
     public int nilfbo_id = 0, nilfbo_db = 0;
     final Object drawmon = new Object();
     final Object prepmon = new Object();
@@ -67,6 +68,7 @@ public abstract class GLEnvironment implements Environment {
 	public final int maxtargets;
 	public final float anisotropy;
 	public final float linemin, linemax;
+	public final int progbinfmts;
 
 	public static int glgeti(GL gl, int param) {
 	    int[] buf = {0};
@@ -153,6 +155,10 @@ public abstract class GLEnvironment implements Environment {
 		    this.linemin = this.linemax = 1;
 		}
 	    }
+	    if((major > 4) || ((major == 4) && (minor >= 1)) || exts.contains("GL_ARB_get_program_binary"))
+		progbinfmts = glcondi(gl, GL.GL_NUM_PROGRAM_BINARY_FORMATS, 0);
+	    else
+		progbinfmts = 0;
 	}
 
 	public void checkreq() {
@@ -177,6 +183,7 @@ public abstract class GLEnvironment implements Environment {
 	this.wnd = wnd;
 	this.caps = mkcaps(initgl);
 	this.caps.checkreq();
+	this.pcache = new ProgramCache(this);
 	initialize(initgl);
     }
 
@@ -329,6 +336,7 @@ public abstract class GLEnvironment implements Environment {
 	    prep = this.prep;
 	    this.prep = null;
 	}
+	pcache.frame();
 	try {
 	    synchronized(drawmon) {
 		checkqueries(gl);
@@ -834,6 +842,7 @@ public abstract class GLEnvironment implements Environment {
 		return(s.prog);
 	    }
 	}
+	pcache.miss();
 	Collection<ShaderMacro> mods = new LinkedList<>();
 	for(int i = 0; i < shaders.length; i++) {
 	    if(shaders[i] != null)
@@ -931,6 +940,7 @@ public abstract class GLEnvironment implements Environment {
 	double now = Utils.rtime();
 	if(now - lastpclean > 60) {
 	    cleanprogs();
+	    pcache.clean();
 	    lastpclean = now;
 	}
     }
@@ -1009,6 +1019,7 @@ public abstract class GLEnvironment implements Environment {
     }
 
     public int numprogs() {return(nprog);}
+    public String progstats() {return(pcache.stats());}
     public Caps caps() {return(caps);}
 
     public String memstats() {
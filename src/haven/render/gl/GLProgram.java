@@ -131,6 +131,23 @@ public class GLProgram implements Disposable {
 	}
     }
 
+    /* Identifies the sources and the locations they are bound to,
+     * for ProgramCache. */
+    String linksig() {
+	StringBuilder buf = new StringBuilder();
+	buf.append(vsrc).append('\0').append(fsrc).append('\0');
+	List<String> attrs = new ArrayList<>();
+	for(AttrID attr : amap.values())
+	    attrs.add(attr.name + "@" + attr.id);
+	Collections.sort(attrs);
+	for(String attr : attrs)
+	    buf.append(attr).append(',');
+	buf.append('\0');
+	for(String nm : fragnms)
+	    buf.append(nm).append(',');
+	return(buf.toString());
+    }
+
     public static int attrsize(Attribute attr) {
 	if(attr.type == Type.MAT3)
 	    return(3);
@@ -162,12 +179,16 @@ public class GLProgram implements Disposable {
 	public final String text;
 	public final String info;
 	
-	public ShaderException(String msg, ShaderOb shader, String info) {
+	public ShaderException(String msg, int type, String text, String info) {
 	    super(msg);
-	    this.type = shader.type;
-	    this.text = shader.text;
+	    this.type = type;
+	    this.text = text;
 	    this.info = info;
 	}
+
+	public ShaderException(String msg, ShaderOb shader, String info) {
+	    this(msg, shader.type, shader.text, info);
+	}
 	
 	public String toString() {
 	    if(info == null)
@@ -198,19 +219,23 @@ public class GLProgram implements Disposable {
 	     * interesting to know, so to speak. */
 	    this.id = gl.glCreateShader(type);
 	    GLException.checkfor(gl, env);
-	    gl.glShaderSource(this.id, 1, new String[] {text}, new int[] {text.length()});
-	    gl.glCompileShader(this.id);
+	    compile(gl, this.id, type, text);
+	}
+
+	static void compile(GL gl, int id, int type, String text) {
+	    gl.glShaderSource(id, 1, new String[] {text}, new int[] {text.length()});
+	    gl.glCompileShader(id);
 	    int[] buf = {0};
-	    gl.glGetShaderiv(this.id, GL.GL_COMPILE_STATUS, buf);
+	    gl.glGetShaderiv(id, GL.GL_COMPILE_STATUS, buf);
 	    if(buf[0] != 1) {
 		String info = null;
-		gl.glGetShaderiv(this.id, GL.GL_INFO_LOG_LENGTH, buf);
+		gl.glGetShaderiv(id, GL.GL_INFO_LOG_LENGTH, buf);
 		if(buf[0] > 0) {
 		    byte[] logbuf = new byte[buf[0]];
-		    gl.glGetShaderInfoLog(this.id, logbuf.length, buf, logbuf);
+		    gl.glGetShaderInfoLog(id, logbuf.length, buf, logbuf);
 		    info = new String(logbuf, 0, buf[0]);
 		}
-		throw(new ShaderException("Failed to compile shader", this, info));
+		throw(new ShaderException("Failed to compile shader", type, text, info));
 	    }
 	}
 
@@ -289,11 +314,15 @@ public class GLProgram implements Disposable {
 
     public class ProgOb extends GLObject implements BGL.ID {
 	public final ShaderOb[] shaders;
+	private final String ckey;
+	private final ProgramCache.Binary cached;
 	private int id;
 
-	public ProgOb(GLEnvironment env, ShaderOb... shaders) {
+	public ProgOb(GLEnvironment env, String ckey, ProgramCache.Binary cached, ShaderOb... shaders) {
 	    super(env);
 	    this.shaders = shaders;
+	    this.ckey = ckey;
+	    this.cached = cached;
 	    env.prepare(this);
 	    for(Map.Entry<Uniform, String> uni : GLProgram.this.unifnms.entrySet()) {
 		UniformID id = uniresolve(uni.getKey().type, uni.getValue());
@@ -331,25 +360,51 @@ public class GLProgram implements Disposable {
 
 	public void create(GL gl) {
 	    this.id = gl.glCreateProgram();
-	    for(ShaderOb sh : shaders)
-		gl.glAttachShader(this.id, sh.glid());
-	    for(AttrID attr : amap.values())
-		gl.glBindAttribLocation(this.id, attr.id, attr.name);
-	    for(int i = 0; i < fragdata.length; i++)
-		gl.glBindFragDataLocation(this.id, i, fragnms[i]);
-	    gl.glLinkProgram(this.id);
-	    int[] buf = {0};
-	    gl.glGetProgramiv(this.id, GL.GL_LINK_STATUS, buf);
-	    if(buf[0] != 1) {
-		String info = null;
-		gl.glGetProgramiv(this.id, GL.GL_INFO_LOG_LENGTH, buf);
-		if(buf[0] > 0) {
-		    byte[] logbuf = new byte[buf[0]];
-		    gl.glGetProgramInfoLog(this.id, logbuf.length, buf, logbuf);
-		    info = new String(logbuf, 0, buf[0]);
+	    int[] fallback = null;
+	    if(cached != null) {
+		if(env.pcache.load(gl, this.id, cached))
+		    return;
+		/* The driver no longer accepts the binary, as after an
+		 * update, so build it from source after all. */
+		fallback = new int[] {gl.glCreateShader(GL.GL_VERTEX_SHADER), gl.glCreateShader(GL.GL_FRAGMENT_SHADER)};
+	    }
+	    try {
+		if(fallback != null) {
+		    ShaderOb.compile(gl, fallback[0], GL.GL_VERTEX_SHADER, vsrc);
+		    ShaderOb.compile(gl, fallback[1], GL.GL_FRAGMENT_SHADER, fsrc);
+		    for(int sh : fallback)
+			gl.glAttachShader(this.id, sh);
+		}
+		for(ShaderOb sh : shaders)
+		    gl.glAttachShader(this.id, sh.glid());
+		for(AttrID attr : amap.values())
+		    gl.glBindAttribLocation(this.id, attr.id, attr.name);
+		for(int i = 0; i < fragdata.length; i++)
+		    gl.glBindFragDataLocation(this.id, i, fragnms[i]);
+		if(ckey != null)
+		    gl.glProgramParameteri(this.id, GL.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, 1);
+		gl.glLinkProgram(this.id);
+		int[] buf = {0};
+		gl.glGetProgramiv(this.id, GL.GL_LINK_STATUS, buf);
+		if(buf[0] != 1) {
+		    String info = null;
+		    gl.glGetProgramiv(this.id, GL.GL_INFO_LOG_LENGTH, buf);
+		    if(buf[0] > 0) {
+			byte[] logbuf = new byte[buf[0]];
+			gl.glGetProgramInfoLog(this.id, logbuf.length, buf, logbuf);
+			info = new String(logbuf, 0, buf[0]);
+		    }
+		    throw(new LinkException("Failed to link GL program", GLProgram.this, info));
+		}
+	    } finally {
+		/* Shaders attached to a program are only flagged
+		 * for deletion until it is deleted itself. */
+		if(fallback != null) {
+		    for(int sh : fallback)
+			gl.glDeleteShader(sh);
 		}
-		throw(new LinkException("Failed to link GL program", GLProgram.this, info));
 	    }
+	    env.pcache.save(gl, ckey, this.id);
 	}
 
 	protected void delete(GL gl) {
@@ -405,9 +460,15 @@ public class GLProgram implements Disposable {
 		if(disposed)
 		    throw(new RuntimeException("reusing disposed program"));
 		if((glp = this.glp) == null) {
-		    glp = new ProgOb(env,
-				     new ShaderOb(env, GL.GL_VERTEX_SHADER, vsrc),
-				     new ShaderOb(env, GL.GL_FRAGMENT_SHADER, fsrc));
+		    String ckey = env.pcache.key(this);
+		    ProgramCache.Binary cached = env.pcache.find(ckey);
+		    if(cached != null) {
+			glp = new ProgOb(env, ckey, cached);
+		    } else {
+			glp = new ProgOb(env, ckey, null,
+					 new ShaderOb(env, GL.GL_VERTEX_SHADER, vsrc),
+					 new ShaderOb(env, GL.GL_FRAGMENT_SHADER, fsrc));
+		    }
 		    this.glp = glp;
 		}
 	    }
@@ -0,0 +1,255 @@
+/*
+ *  This file is part of the Haven & Hearth game client.
+ *  Copyright (C) 2009 Fredrik Tolf <fredrik@dolda2000.com>, and
+ *                     Björn Johannessen <johannessen.bjorn@gmail.com>
+ *
+ *  Redistribution and/or modification of this file is subject to the
+ *  terms of the GNU Lesser General Public License, version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  Other parts of this source tree adhere to other copying
+ *  rights. Please see the file `COPYING' in the root directory of the
+ *  source tree for details.
+ *
+ *  A copy the GNU Lesser General Public License is distributed along
+ *  with the source tree of which this file is a part in the file
+ *  `doc/LPGL-3'. If it is missing for any reason, please see the Free
+ *  Software Foundation's website at <http://www.fsf.org/>, or write
+ *  to the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ *  Boston, MA 02111-1307 USA
+ */
+
+package haven.render.gl;
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import haven.*;
+
+/*
+ * Keeps linked program binaries across sessions in the resource
+ * cache. Programs are still generated from their shader macros every
+ * session, since that is also what yields their uniform and
+ * attribute metadata, but the binaries are keyed on the generated
+ * sources and bindings along with the driver identity, so that the
+ * driver only compiles and links each of them once. A log of how
+ * often each program has been used is kept as well, and the
+ * binaries of the most used ones are read back in ahead of time on
+ * startup.
+ */
+public class ProgramCache {
+    public static final Config.Variable<Boolean> enabled = Config.Variable.propb("haven.glprogcache", true);
+    private static final int PREWARM = 64, MAXLOG = 512;
+    private static final String USAGE = "glprog/usage";
+    public final GLEnvironment env;
+    public final boolean active;
+    private final ResCache store;
+    private final String driver;
+    private final Map<String, Binary> warm = new HashMap<>();
+    private final Map<String, Float> usage = new HashMap<>();
+    private final Set<String> used = new HashSet<>();
+    private boolean dirty = false, saving = false;
+    private final AtomicInteger nmiss = new AtomicInteger(0), nload = new AtomicInteger(0);
+    private int lmiss, lload, tmiss, tload;
+
+    public static class Binary {
+	public final int format;
+	public final byte[] data;
+
+	public Binary(int format, byte[] data) {
+	    this.format = format;
+	    this.data = data;
+	}
+    }
+
+    public ProgramCache(GLEnvironment env) {
+	this.env = env;
+	this.store = ResCache.global;
+	this.active = enabled.get() && (store != null) && (env.caps.progbinfmts > 0);
+	this.driver = env.caps.vendor + "\0" + env.caps.renderer + "\0" + env.caps.version;
+	if(active)
+	    Defer.later(this::prewarm, null);
+    }
+
+    public String key(GLProgram prog) {
+	if(!active)
+	    return(null);
+	byte[] dig = Digest.hash(Digest.SHA1, driver.getBytes(StandardCharsets.UTF_8), prog.linksig().getBytes(StandardCharsets.UTF_8));
+	return(Utils.byte2hex(dig));
+    }
+
+    private Binary fetch(String key) {
+	try {
+	    Message buf = store.fetchmsg("glprog/" + key);
+	    if(buf.uint8() != 1)
+		return(null);
+	    int fmt = buf.int32();
+	    return(new Binary(fmt, buf.bytes(buf.int32())));
+	} catch(FileNotFoundException e) {
+	    return(null);
+	} catch(IOException | Message.BinError e) {
+	    new Warning(e, "could not read cached GL program " + key).issue();
+	    return(null);
+	}
+    }
+
+    private void store(String key, Binary bin) {
+	try(StreamMessage fp = new StreamMessage(store.store("glprog/" + key))) {
+	    fp.adduint8(1);
+	    fp.addint32(bin.format);
+	    fp.addint32(bin.data.length);
+	    fp.addbytes(bin.data);
+	} catch(IOException e) {
+	    new Warning(e, "could not store GL program " + key).issue();
+	}
+    }
+
+    private void use(String key) {
+	synchronized(this) {
+	    if(used.add(key)) {
+		usage.put(key, usage.getOrDefault(key, 0.0f) + 1);
+		dirty = true;
+	    }
+	}
+    }
+
+    /* Called for every program that has to be generated. */
+    public void miss() {
+	nmiss.incrementAndGet();
+    }
+
+    public Binary find(String key) {
+	if(key == null)
+	    return(null);
+	use(key);
+	Binary ret;
+	synchronized(this) {
+	    ret = warm.remove(key);
+	}
+	if(ret == null)
+	    ret = fetch(key);
+	if(ret != null)
+	    nload.incrementAndGet();
+	return(ret);
+    }
+
+    /* Must be called on the GL thread with the program unlinked. */
+    public boolean load(GL gl, int prog, Binary bin) {
+	ByteBuffer data = ByteBuffer.allocateDirect(bin.data.length);
+	data.put(bin.data);
+	data.flip();
+	GLException.checkfor(gl, env);
+	gl.glProgramBinary(prog, bin.format, data, bin.data.length);
+	/* Drivers raise errors for binary formats they no longer
+	 * accept, which is not fatal here. */
+	if(gl.glGetError() != 0)
+	    return(false);
+	int[] buf = {0};
+	gl.glGetProgramiv(prog, GL.GL_LINK_STATUS, buf);
+	return(buf[0] == 1);
+    }
+
+    /* Must be called on the GL thread with the program linked. */
+    public void save(GL gl, String key, int prog) {
+	if(key == null)
+	    return;
+	use(key);
+	int[] len = {0}, fmt = {0};
+	gl.glGetProgramiv(prog, GL.GL_PROGRAM_BINARY_LENGTH, len);
+	if(len[0] <= 0)
+	    return;
+	ByteBuffer data = ByteBuffer.allocateDirect(len[0]);
+	gl.glGetProgramBinary(prog, len[0], len, fmt, data);
+	byte[] bin = new byte[len[0]];
+	data.get(bin);
+	Defer.later(() -> store(key, new Binary(fmt[0], bin)), null);
+    }
+
+    private void prewarm() {
+	Map<String, Float> log = new HashMap<>();
+	try {
+	    Message buf = store.fetchmsg(USAGE);
+	    while(!buf.eom()) {
+		String key = buf.string();
+		/* Decay the counts of earlier sessions, so that programs
+		 * that are no longer used, as after a driver update,
+		 * eventually drop out. */
+		log.put(key, buf.float32() * 0.9f);
+	    }
+	} catch(FileNotFoundException e) {
+	} catch(IOException | Message.BinError e) {
+	    new Warning(e, "could not read GL program usage").issue();
+	}
+	List<String> top;
+	synchronized(this) {
+	    for(Map.Entry<String, Float> ent : log.entrySet())
+		usage.merge(ent.getKey(), ent.getValue(), Float::sum);
+	    top = new ArrayList<>(log.keySet());
+	}
+	top.sort((a, b) -> Float.compare(log.get(b), log.get(a)));
+	for(String key : top.subList(0, Math.min(top.size(), PREWARM))) {
+	    synchronized(this) {
+		if(used.contains(key))
+		    continue;
+	    }
+	    Binary bin = fetch(key);
+	    if(bin != null) {
+		synchronized(this) {
+		    if(!used.contains(key))
+			warm.put(key, bin);
+		}
+	    }
+	}
+    }
+
+    private void saveusage() {
+	List<Map.Entry<String, Float>> ents = new ArrayList<>();
+	synchronized(this) {
+	    for(Map.Entry<String, Float> ent : usage.entrySet())
+		ents.add(new AbstractMap.SimpleEntry<>(ent));
+	    dirty = false;
+	}
+	ents.sort((a, b) -> Float.compare(b.getValue(), a.getValue()));
+	try(StreamMessage fp = new StreamMessage(store.store(USAGE))) {
+	    for(Map.Entry<String, Float> ent : ents.subList(0, Math.min(ents.size(), MAXLOG))) {
+		fp.addstring(ent.getKey());
+		fp.addfloat32(ent.getValue());
+	    }
+	} catch(IOException e) {
+	    new Warning(e, "could not store GL program usage").issue();
+	} finally {
+	    synchronized(this) {
+		saving = false;
+	    }
+	}
+    }
+
+    public void clean() {
+	if(!active)
+	    return;
+	synchronized(this) {
+	    if(!dirty || saving)
+		return;
+	    saving = true;
+	}
+	Defer.later(this::saveusage, null);
+    }
+
+    public void frame() {
+	lmiss = nmiss.getAndSet(0);
+	lload = nload.getAndSet(0);
+	tmiss += lmiss;
+	tload += lload;
+    }
+
+    public String stats() {
+	return(String.format("%d/%d missed/cached, last frame %d/%d%s", tmiss, tload, lmiss, lload, active ? "" : ", disk cache off"));
+    }
+}
@@ -138,6 +138,7 @@ public class LWJGLWrap implements GL {
     public void glGetIntegerv(int pname, int[] data) {GL30.glGetIntegerv(pname, data);}
     public String glGetString(int name) {return(GL30.glGetString(name));}
     public String glGetStringi(int name, int index) {return(GL30.glGetStringi(name, index));}
+    public void glGetProgramBinary(int program, int bufsize, int[] length, int[] format, ByteBuffer binary) {GL41.glGetProgramBinary(program, length, format, ckbuf(binary, bufsize));}
     public void glGetProgramInfoLog(int shader, int maxlength, int[] length, byte[] infolog) {GL30.glGetProgramInfoLog(shader, length, ckbuf(ByteBuffer.wrap(infolog), maxlength));}
     public void glGetProgramiv(int shader, int pname, int[] buf) {GL30.glGetProgramiv(shader, pname, buf);}
     public void glGetQueryObjectiv(int id, int pname, int[] params) {GL30.glGetQueryObjectiv(id, pname, params);}
@@ -155,6 +156,8 @@ public class LWJGLWrap implements GL {
     public void glPointSize(float size) {GL30.glPointSize(size);}
     public void glPolygonMode(int face, int mode) {GL30.glPolygonMode(face, mode);}
     public void glPolygonOffset(float factor, float units) {GL30.glPolygonOffset(factor, units);}
+    public void glProgramBinary(int program, int format, ByteBuffer binary, int length) {GL41.glProgramBinary(program, format, ckbuf(binary, length));}
+    public void glProgramParameteri(int program, int pname, int value) {GL41.glProgramParameteri(program, pname, value);}
     public void glQueryCounter(int id, int target) {GL33.glQueryCounter(id, target);}
     public void glReadBuffer(int buf) {GL30.glReadBuffer(buf);}
     public void glReadPixels(int x, int y, int width, int height, int format, int type, ByteBuffer data) {GL30.glReadPixels(x, y, width, height, format, type, data);}
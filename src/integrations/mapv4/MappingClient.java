@@ -269,11 +269,19 @@ public class MappingClient {
 	@Override
 	public void run() {
 	    if(mapfile.lock.readLock().tryLock()) {
-		List<MarkerData> markers = mapfile.markers.stream().filter(uploadCheck).map(m -> {
-		    Coord mgc = new Coord(Math.floorDiv(m.tc.x, 100), Math.floorDiv(m.tc.y, 100));
-		    Indir<MapFile.Grid> indirGrid = mapfile.segments.get(m.seg).grid(mgc);
-		    return new MarkerData(m, indirGrid);
-		}).collect(Collectors.toList());
+		List<MarkerData> markers = new ArrayList<>();
+		/* Per segment, so that each segment is looked up once. */
+		for(long seg : mapfile.markidx.segments()) {
+		    MapFile.Segment segment = null;
+		    for(Marker m : mapfile.markidx.get(seg)) {
+			if(!uploadCheck.test(m))
+			    continue;
+			if(segment == null)
+			    segment = mapfile.segments.get(seg);
+			Coord mgc = new Coord(Math.floorDiv(m.tc.x, 100), Math.floorDiv(m.tc.y, 100));
+			markers.add(new MarkerData(m, segment.grid(mgc)));
+		    }
+		}
 		System.out.println("collected " + markers.size() + " markers");
 		mapfile.lock.readLock().unlock();
 		scheduler.execute(new ProcessMapper(mapfile, markers));
@@ -91,9 +91,7 @@ public class AnimalFarm {
     
     enum AnimalActions {
 	Highlight("Show", (gui, id) -> () -> {
-	    gui.ui.sess.glob.oc.stream()
-		.filter(gob -> gob.id == id)
-		.forEach(Gob::highlight);
+	    gui.ui.sess.glob.oc.getgobs(id).forEach(Gob::highlight);
 	}),
 	Shoo("Shoo", flower("Shoo")),
 	Slaughter("Kill", flower("Slaughter")),
@@ -210,10 +210,11 @@ public class MeshUtils {
 		    waterHeight = map.getzp(gob.rc).z - gob.getrc().z;
 		}
 		
-		float bz = (float) map.getcz(c.x, c.y);
+		MCache.Sampler smp = map.sampler();
+		float bz = (float) smp.getcz(c.x, c.y);
 		
 		for (int i = 0; i < n; ++i) {
-		    float z = (float) map.getcz(c.x + (double) points.get(i * 3), c.y - (double) points.get(i * 3 + 1)) - bz;
+		    float z = (float) smp.getcz(c.x + (double) points.get(i * 3), c.y - (double) points.get(i * 3 + 1)) - bz;
 		    if(dro != null) {
 			points.put(3 * i + 2, z + h - dro.off.z);
 		    } else {
@@ -7,7 +7,6 @@ import me.ender.IDPool;
 import java.awt.*;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -48,7 +47,7 @@ public class AutoMarkers {
 	    .collect(Collectors.toList());
     }
     
-    private static Collection<Marker> customMarkers(Collection<Marker> markers) {
+    public static Collection<Marker> customMarkers(Collection<Marker> markers) {
 	return markers.stream()
 	    .filter(marker -> marker instanceof CustomMarker)
 	    .collect(Collectors.toList());
@@ -77,21 +76,12 @@ public class AutoMarkers {
 	}
     }
     
-    public static void saveCustomMarkers(MapFile file) {
-	OutputStream fp;
-	try {
-	    fp = file.sstore("index-ender");
-	} catch (IOException e) {
-	    throw (new StreamMessage.IOError(e));
-	}
-	Collection<Marker> markers = customMarkers(file.markers);
-	try (StreamMessage out = new StreamMessage(fp)) {
-	    out.adduint8(1);
-	    file.markerids.save(out);
-	    out.addint32(markers.size());
-	    for (Marker mark : markers)
-		savecmarker(out, mark);
-	}
+    public static void saveCustomMarkers(MapFile file, Message out, Collection<Marker> markers) {
+	out.adduint8(1);
+	file.markerids.save(out);
+	out.addint32(markers.size());
+	for (Marker mark : markers)
+	    savecmarker(out, mark);
     }
     
     public static Marker loadcmarker(Message fp) {
@@ -8,6 +8,9 @@ public abstract class Marker {
     public long seg;
     public Coord tc;
     public String nm;
+    /* Identifies the marker in the map file index and journal;
+     * assigned by MapFile when the marker is added. */
+    public long jid;
     
     public Marker(long seg, Coord tc, String nm) {
 	this.seg = seg;